@@ -0,0 +1,100 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing.benchmarks;
+
+import jturing.ArrayTape;
+import jturing.ExecutionMode;
+import jturing.Tape;
+import jturing.TuringMachine;
+import jturing.TuringMachinePresets;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+/**
+ * Steps per second of the sweeping presets over input tapes from 10 to 10^7 cells
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Thread)
+public class EngineBenchmark {
+
+    @Param({"ParityMachine", "BitFlipper"})
+    public String machine;
+
+    @Param({"10", "1000", "100000", "10000000"})
+    public int size;
+
+    @Param({"STANDARD", "ACCELERATED", "JIT"})
+    public ExecutionMode mode;
+
+    private char[] input;
+
+    // Reported by JMH as a rate alongside the score, giving steps per second
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Steps {
+        public long steps;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            steps = 0;
+        }
+    }
+
+    // Random bits, framed as each machine expects: bits then '*' for the parity machine, '*' bits '*' for the flipper
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        boolean parity = machine.equals("ParityMachine");
+        input = new char[parity ? size + 1 : size + 2];
+        int first = parity ? 0 : 1;
+        for (int i = first; i < first + size; i++) {
+            input[i] = random.nextBoolean() ? '1' : '0';
+        }
+        input[0] = parity ? input[0] : '*';
+        input[input.length - 1] = '*';
+    }
+
+    @Benchmark
+    public TuringMachine run(Steps steps) {
+        Tape tape = new ArrayTape(input);
+        TuringMachine turingMachine = machine.equals("ParityMachine")
+                ? new TuringMachinePresets.ParityMachine(tape)
+                : new TuringMachinePresets.BitFlipper(tape);
+        turingMachine.setExecutionMode(mode);
+        turingMachine.run();
+        steps.steps += turingMachine.getTime();
+        return turingMachine;
+    }
+}
@@ -0,0 +1,111 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing.benchmarks;
+
+import jturing.CompiledProgram;
+import jturing.HeadDirection;
+import jturing.Instruction;
+import jturing.State;
+import jturing.TuringMachine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+
+/**
+ * Cost of finding the instruction for a (state, symbol) pair as the instruction table grows
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+public class LookupBenchmark {
+
+    private static final int LOOKUPS = 1024;
+    private static final char[] SYMBOLS = {'0', '1', '*', '+', '=', '-'};
+
+    @Param({"6", "60", "600", "6000"})
+    public int tableSize;
+
+    private TuringMachine turingMachine;
+    private CompiledProgram program;
+    private State[] states;
+    private int[] stateIds;
+    private char[] symbols;
+
+    @Setup
+    public void setUp() {
+        int stateCount = tableSize / SYMBOLS.length;
+        State[] all = new State[stateCount];
+        for (int i = 0; i < stateCount; i++) {
+            all[i] = new State("q" + i);
+        }
+        Instruction[] instructions = new Instruction[stateCount * SYMBOLS.length];
+        for (int i = 0; i < stateCount; i++) {
+            for (int j = 0; j < SYMBOLS.length; j++) {
+                instructions[i * SYMBOLS.length + j] = new Instruction(all[i], SYMBOLS[j], all[(i + 1) % stateCount],
+                        SYMBOLS[j], HeadDirection.R, false);
+            }
+        }
+        turingMachine = new TuringMachine(all[0]);
+        turingMachine.setInstructions(instructions);
+        program = turingMachine.compile();
+
+        // Random lookups, with fresh State objects as a caller of getInstruction would have
+        Random random = new Random(42);
+        states = new State[LOOKUPS];
+        stateIds = new int[LOOKUPS];
+        symbols = new char[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            int state = random.nextInt(stateCount);
+            states[i] = new State("q" + state);
+            stateIds[i] = program.stateId(states[i]);
+            symbols[i] = SYMBOLS[random.nextInt(SYMBOLS.length)];
+        }
+    }
+
+    // Public lookup by State object, which interns the state name on every call
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void getInstruction(Blackhole blackhole) throws Instruction.InstructionNotFoundException {
+        for (int i = 0; i < LOOKUPS; i++) {
+            blackhole.consume(turingMachine.getInstruction(states[i], symbols[i]));
+        }
+    }
+
+    // Lookup by state id, as the run loop does
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void transition(Blackhole blackhole) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            blackhole.consume(program.transition(stateIds[i], symbols[i]));
+        }
+    }
+}
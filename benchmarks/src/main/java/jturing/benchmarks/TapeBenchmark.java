@@ -0,0 +1,69 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing.benchmarks;
+
+import jturing.Tape;
+import jturing.TapeBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Pathological tape growth: a head that only ever moves onto new cells on one side, writing to each
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Thread)
+public class TapeBenchmark {
+
+    @Param({"ARRAY", "PAGED", "RUN_LENGTH", "PACKED"})
+    public TapeBackend backend;
+
+    @Param({"1000", "100000", "1000000"})
+    public int cells;
+
+    @Benchmark
+    public Tape growLeft() {
+        Tape tape = backend.create(new char[]{'0', '1'});
+        for (int i = 0; i < cells; i++) {
+            tape.expandOnLeft();
+            tape.write(0, (i & 1) == 0 ? '0' : '1');
+        }
+        return tape;
+    }
+
+    @Benchmark
+    public Tape growRight() {
+        Tape tape = backend.create(new char[]{'0', '1'});
+        for (int i = 0; i < cells; i++) {
+            tape.expandOnRight();
+            tape.write(tape.getLength() - 1, (i & 1) == 0 ? '0' : '1');
+        }
+        return tape;
+    }
+}
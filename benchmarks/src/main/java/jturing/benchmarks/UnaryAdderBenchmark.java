@@ -0,0 +1,90 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing.benchmarks;
+
+import jturing.ArrayTape;
+import jturing.ExecutionMode;
+import jturing.TuringMachine;
+import jturing.TuringMachinePresets;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+
+/**
+ * Steps per second of the unary adder. It shuttles across the whole tape for every digit, so its step count is
+ * quadratic in the input size and the largest inputs stop well short of 10^7 cells
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Thread)
+public class UnaryAdderBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    @Param({"STANDARD", "ACCELERATED", "JIT"})
+    public ExecutionMode mode;
+
+    private char[] input;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Steps {
+        public long steps;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            steps = 0;
+        }
+    }
+
+    // Tape of the form '*' 1^a '+' 1^b '=' with a + b close to size
+    @Setup(Level.Trial)
+    public void setUp() {
+        int half = Math.max(1, (size - 3) / 2);
+        input = new char[half * 2 + 3];
+        Arrays.fill(input, '1');
+        input[0] = '*';
+        input[half + 1] = '+';
+        input[input.length - 1] = '=';
+    }
+
+    @Benchmark
+    public TuringMachine run(Steps steps) {
+        TuringMachine turingMachine = new TuringMachinePresets.UnaryAdder(new ArrayTape(input));
+        turingMachine.setExecutionMode(mode);
+        turingMachine.run();
+        steps.steps += turingMachine.getTime();
+        return turingMachine;
+    }
+}
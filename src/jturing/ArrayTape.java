@@ -0,0 +1,159 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Contiguous tape backed by a char array that grows geometrically in both directions
+ */
+public class ArrayTape implements Tape {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private char[] buffer; // Backing storage with blank slack on both sides of the logical contents
+    private int start; // Buffer index of the leftmost cell
+    private int length; // Number of cells on the tape
+    private int origin; // Number of cells added on the left since the tape was created
+
+    public ArrayTape(char[] values) {
+        this(values, 0);
+    }
+
+    // Creates a tape whose first origin cells lie to the left of the position the head coordinates are relative to
+    public ArrayTape(char[] values, int origin) {
+        this.length = values.length;
+        this.origin = origin;
+        this.buffer = new char[Math.max(MIN_CAPACITY, length * 2)];
+        this.start = (buffer.length - length) / 2;
+        Arrays.fill(buffer, BLANK);
+        System.arraycopy(values, 0, buffer, start, length);
+    }
+
+    public ArrayTape(char[] values, boolean overwrite) {
+        this(values);
+        if (overwrite) {
+            Arrays.fill(buffer, start, start + length, BLANK);
+        }
+    }
+
+    @Override
+    public void write(int index, char val) {
+        buffer[start + Objects.checkIndex(index, length)] = val;
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public int getOrigin() {
+        return origin;
+    }
+
+    @Override
+    public void expandOnLeft() {
+        if (start == 0) {
+            grow();
+        }
+
+        // The slack is kept blank, so widening the window is enough
+        start--;
+        length++;
+        origin++;
+    }
+
+    @Override
+    public void expandOnRight() {
+        if (start + length == buffer.length) {
+            grow();
+        }
+        length++;
+    }
+
+    @Override
+    public void shrinkOnLeft() {
+
+        // Blank the cell again so the slack stays blank
+        buffer[start] = BLANK;
+        start++;
+        length--;
+        origin--;
+    }
+
+    @Override
+    public void shrinkOnRight() {
+        length--;
+        buffer[start + length] = BLANK;
+    }
+
+    // Doubles the buffer and recentres the contents, leaving room to expand in either direction
+    private void grow() {
+        char[] newBuffer = new char[buffer.length * 2];
+        int newStart = (newBuffer.length - length) / 2;
+        Arrays.fill(newBuffer, BLANK);
+        System.arraycopy(buffer, start, newBuffer, newStart, length);
+        buffer = newBuffer;
+        start = newStart;
+    }
+
+    @Override
+    public char getValue(int index) {
+        return buffer[start + Objects.checkIndex(index, length)];
+    }
+
+    @Override
+    public char[] getValues() {
+        return Arrays.copyOfRange(buffer, start, start + length);
+    }
+
+    @Override
+    public void putValues(CharBuffer target) {
+        target.put(buffer, start, length);
+    }
+
+    // Same as the default, but scanning the buffer directly
+    @Override
+    public int sweep(int index, int move, boolean[] loops, char[] rewrite, int max) {
+        Objects.checkIndex(index, length);
+        int from = start + index;
+        int limit = from + move * Math.min(move > 0 ? length - 1 - index : index, max);
+        char[] buffer = this.buffer;
+        int i = from;
+        while (i != limit) {
+            char symbol = buffer[i];
+            if (symbol >= loops.length || !loops[symbol]) break;
+            buffer[i] = rewrite[symbol];
+            i += move;
+        }
+        return (i - from) * move;
+    }
+
+    @Override
+    public Tape copy() {
+        return new ArrayTape(getValues(), origin);
+    }
+}
@@ -0,0 +1,199 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Runs machines in the background, handing back a future of each run's outcome. Progress is reported to listeners at
+ * most once per progress interval, and cancelling a future ends its run at the next check, which the run's options
+ * place every check interval steps. By default runs go on virtual threads where the JDK has them, so many runs at once
+ * never need a platform thread each, and on a dedicated pool of daemon threads otherwise
+ */
+public class AsyncRunner {
+
+    private static final Executor DEFAULT_EXECUTOR = defaultExecutor();
+
+    private final Executor executor;
+    private final List<Consumer<Progress>> listeners = new CopyOnWriteArrayList<>();
+    private long progressNanos = Duration.ofMillis(200).toNanos();
+
+    public AsyncRunner() {
+        this(DEFAULT_EXECUTOR);
+    }
+
+    public AsyncRunner(Executor executor) {
+        this.executor = executor;
+    }
+
+    // Looks up the virtual-thread-per-task executor by reflection, so the class still loads on JDKs without one.
+    // Without virtual threads every run gets a daemon thread of its own from a cached pool, so runs never queue behind
+    // each other and never tie up a shared pool such as the common fork-join pool, which the explorer uses
+    private static Executor defaultExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "async-runner");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // Whether runners made without an executor of their own run on virtual threads
+    public static boolean isVirtualThreadsDefault() {
+        return !(DEFAULT_EXECUTOR instanceof ThreadPoolExecutor);
+    }
+
+    // What a run had got to when it reported progress
+    public static class Progress {
+        private final TuringMachine machine;
+        private final long time;
+        private final int tapeLength;
+        private final State state;
+        private final boolean halt;
+        private final long elapsedNanos;
+
+        private Progress(TuringMachine machine, long elapsedNanos) {
+            this.machine = machine;
+            this.time = machine.getTime();
+            this.tapeLength = machine.getTape().getLength();
+            this.state = machine.getCurrentState();
+            this.halt = machine.isHalt();
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        // Machine the run belongs to; it keeps changing while the run goes on
+        public TuringMachine getMachine() {
+            return machine;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public int getTapeLength() {
+            return tapeLength;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public boolean isHalt() {
+            return halt;
+        }
+
+        public Duration getElapsed() {
+            return Duration.ofNanos(elapsedNanos);
+        }
+    }
+
+    // Runs the machine in the background without limits
+    public CompletableFuture<RunOutcome> submit(TuringMachine machine) {
+        return submit(machine, new RunOptions());
+    }
+
+    // Runs the machine in the background under the given options. The future completes with the outcome of the run,
+    // or exceptionally if the run throws; cancelling it ends the run with CANCELLED at its next check. The machine
+    // must not be touched until the future is done
+    public CompletableFuture<RunOutcome> submit(TuringMachine machine, RunOptions options) {
+        CompletableFuture<RunOutcome> future = new CompletableFuture<>();
+        RunOptions run = new RunOptions();
+        run.setMaxSteps(options.getMaxSteps());
+        run.setTimeout(options.getTimeout());
+        run.setCycleDetection(options.isCycleDetection());
+        run.setCheckInterval(options.getCheckInterval());
+
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) return;
+                long start = System.nanoTime();
+                run.setCancellation(checks(machine, options.getCancellation(), future, start));
+                try {
+                    RunOutcome outcome = machine.run(run);
+                    publish(new Progress(machine, System.nanoTime() - start));
+                    future.complete(outcome);
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    // The run polls its cancellation between chunks on its own thread, which is where progress is safe to read, so
+    // progress is reported from there as well
+    private BooleanSupplier checks(TuringMachine machine, BooleanSupplier cancellation,
+                                   CompletableFuture<RunOutcome> future, long start) {
+        long[] lastReport = {start};
+        return () -> {
+            long now = System.nanoTime();
+            if (!listeners.isEmpty() && now - lastReport[0] >= progressNanos) {
+                lastReport[0] = now;
+                publish(new Progress(machine, now - start));
+            }
+            return future.isCancelled() || (cancellation != null && cancellation.getAsBoolean());
+        };
+    }
+
+    private void publish(Progress progress) {
+        for (Consumer<Progress> listener : listeners) {
+            listener.accept(progress);
+        }
+    }
+
+    // Adds a listener called from the running thread with the progress of every run, and once more as each run ends
+    public void addProgressListener(Consumer<Progress> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeProgressListener(Consumer<Progress> listener) {
+        listeners.remove(listener);
+    }
+
+    public Duration getProgressInterval() {
+        return Duration.ofNanos(progressNanos);
+    }
+
+    // Minimum time between progress reports of a run, which are only made between chunks of its check interval
+    public void setProgressInterval(Duration progressInterval) {
+        if (progressInterval.isNegative()) throw new IllegalArgumentException("Progress interval cannot be negative");
+        this.progressNanos = progressInterval.toNanos();
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+}
@@ -0,0 +1,149 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Runs one compiled program over many independent input tapes in parallel, handing back each result as soon as its
+ * run finishes
+ */
+public class BatchRunner {
+
+    private static final int CHUNK_SIZE = 256; // Inputs per task, so short runs are not dominated by scheduling
+
+    private final CompiledProgram program;
+    private final State initialState;
+    private final long maxSteps;
+    private final Executor executor;
+    private final int maxChunksInFlight;
+    private TapeBackend tapeBackend = TapeBackend.ARRAY;
+
+    // Runs on the common fork-join pool
+    public BatchRunner(CompiledProgram program, State initialState, long maxSteps) {
+        this(program, initialState, maxSteps, ForkJoinPool.commonPool());
+    }
+
+    // Runs on the given executor, for example a virtual-thread-per-task executor where the JDK provides one
+    public BatchRunner(CompiledProgram program, State initialState, long maxSteps, Executor executor) {
+        this.program = program;
+        this.initialState = initialState;
+        this.maxSteps = maxSteps;
+        this.executor = executor;
+        this.maxChunksInFlight = Runtime.getRuntime().availableProcessors() * 4;
+    }
+
+    // Outcome of the run over one input
+    public static class Result {
+        private final int index;
+        private final Execution execution;
+        private final RunOutcome outcome;
+
+        private Result(int index, Execution execution, RunOutcome outcome) {
+            this.index = index;
+            this.execution = execution;
+            this.outcome = outcome;
+        }
+
+        // Position of the input in the batch
+        public int getIndex() {
+            return index;
+        }
+
+        public RunOutcome getOutcome() {
+            return outcome;
+        }
+
+        public Execution getExecution() {
+            return execution;
+        }
+    }
+
+    // Runs the program over every input, calling the consumer from worker threads as runs finish, in no particular
+    // order. Inputs are read lazily and only a bounded number of them is in flight at a time. Returns once every
+    // result has been consumed
+    public void run(Iterable<char[]> inputs, Consumer<Result> consumer) throws InterruptedException {
+        Semaphore slots = new Semaphore(maxChunksInFlight);
+        Phaser pending = new Phaser(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Iterator<char[]> iterator = inputs.iterator();
+        int next = 0;
+        while (iterator.hasNext() && failure.get() == null) {
+            char[][] chunk = new char[CHUNK_SIZE][];
+            int count = 0;
+            while (count < CHUNK_SIZE && iterator.hasNext()) {
+                chunk[count++] = iterator.next();
+            }
+            int first = next;
+            int size = count;
+            next += count;
+
+            slots.acquire();
+            pending.register();
+            try {
+                executor.execute(() -> {
+                    try {
+                        for (int i = 0; i < size; i++) {
+                            consumer.accept(run(first + i, chunk[i]));
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        slots.release();
+                        pending.arriveAndDeregister();
+                    }
+                });
+            } catch (RuntimeException e) {
+                slots.release();
+                pending.arriveAndDeregister();
+                throw e;
+            }
+        }
+
+        pending.awaitAdvanceInterruptibly(pending.arrive());
+        if (failure.get() != null) {
+            throw new IllegalStateException("Batch run failed", failure.get());
+        }
+    }
+
+    private Result run(int index, char[] input) {
+        Execution execution = new Execution(program, initialState, tapeBackend.create(input, 0, program));
+        RunOutcome outcome = execution.run(maxSteps);
+        return new Result(index, execution, outcome);
+    }
+
+    public TapeBackend getTapeBackend() {
+        return tapeBackend;
+    }
+
+    public void setTapeBackend(TapeBackend tapeBackend) {
+        this.tapeBackend = tapeBackend;
+    }
+}
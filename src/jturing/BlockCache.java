@@ -0,0 +1,236 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memoizes how a program traverses fixed-size blocks of tape, Hashlife-style. The tape is divided into blocks of
+ * blockSize cells counted from the original first cell, and a traversal starting in a given state on a given cell of a
+ * block with given contents always ends the same way: the head leaves the block, or it reaches a halting or missing
+ * transition inside it. The cache maps the start of a traversal to its end (the new contents, where the head ends up,
+ * the state and the number of steps taken), so a traversal seen before takes one lookup instead of a step per cell.
+ *
+ * <p>Entries are keyed by a hash of the state, entry cell and contents, and the contents are compared in full on a hit,
+ * so time stays exactly the naive step count. The least recently used entries are evicted once the cache is full
+ */
+public class BlockCache {
+
+    private static final int STEP_LIMIT_PER_CELL = 64; // Traversals longer than this are not worth remembering
+
+    private final int blockSize;
+    private final int capacity;
+    private final LinkedHashMap<Key, Entry> entries;
+    private final Key probe;
+    private final char[] cells;
+    private CompiledProgram program;
+    private int cooldown; // Steps left to run without the cache after a traversal that would not end
+    private long hits;
+    private long misses;
+
+    public BlockCache() {
+        this(32, 1 << 16);
+    }
+
+    public BlockCache(int blockSize, int capacity) {
+        if (blockSize <= 0) throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.blockSize = blockSize;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > BlockCache.this.capacity;
+            }
+        };
+        this.probe = new Key(new char[blockSize]);
+        this.cells = new char[blockSize];
+    }
+
+    // Start of a traversal: the state, the cell it starts on and the contents of the block
+    private static final class Key {
+        private final char[] contents;
+        private int state;
+        private int offset;
+        private int hash;
+
+        private Key(char[] contents) {
+            this.contents = contents;
+        }
+
+        private void rehash() {
+            long h = state * 0x9E3779B97F4A7C15L + offset;
+            for (char symbol : contents) {
+                h = (h ^ symbol) * 0x100000001B3L;
+            }
+            hash = (int) (h ^ h >>> 32);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) return false;
+            Key key = (Key) other;
+            return hash == key.hash && state == key.state && offset == key.offset
+                    && Arrays.equals(contents, key.contents);
+        }
+    }
+
+    // End of a traversal. The head ends on offset, which is -1 or blockSize if it left the block
+    private static final class Entry {
+        private final char[] contents;
+        private final int offset;
+        private final int state;
+        private final int lastTransition;
+        private final int steps;
+
+        private Entry(char[] contents, int offset, int state, int lastTransition, int steps) {
+            this.contents = contents;
+            this.offset = offset;
+            this.state = state;
+            this.lastTransition = lastTransition;
+            this.steps = steps;
+        }
+    }
+
+    // Applies the traversal of the block under the head, if it is wholly on the tape and takes no more than max steps,
+    // and returns the state id the machine is left in. Returns -1 if nothing was applied, and the caller takes a
+    // regular step instead
+    int apply(TuringMachine machine, CompiledProgram program, int state, int max) {
+        if (program != this.program) {
+            clear();
+            this.program = program;
+        }
+        if (cooldown > 0) {
+            cooldown--;
+            return -1;
+        }
+
+        Tape tape = machine.getTape();
+        int position = machine.getCurrentPosition();
+        int first = Math.floorDiv(position, blockSize) * blockSize;
+        int start = first + tape.getOrigin();
+        if (start < 0 || start + blockSize > tape.getLength()) return -1;
+
+        for (int i = 0; i < blockSize; i++) {
+            probe.contents[i] = tape.getValue(start + i);
+        }
+        probe.state = state;
+        probe.offset = position - first;
+        probe.rehash();
+        Entry entry = entries.get(probe);
+        if (entry != null) {
+            hits++;
+        } else {
+            misses++;
+            entry = traverse(program, state, probe.offset);
+            if (entry == null) {
+                cooldown = STEP_LIMIT_PER_CELL * blockSize;
+                return -1;
+            }
+            Key key = new Key(probe.contents.clone());
+            key.state = probe.state;
+            key.offset = probe.offset;
+            key.hash = probe.hash;
+            entries.put(key, entry);
+        }
+        if (entry.steps == 0 || entry.steps > max) return -1;
+
+        for (int i = 0; i < blockSize; i++) {
+            if (entry.contents[i] != probe.contents[i]) {
+                tape.write(start + i, entry.contents[i]);
+            }
+        }
+        machine.setCurrentPosition(first + entry.offset);
+        if (entry.offset < 0 && start == 0) {
+            tape.expandOnLeft();
+        } else if (entry.offset == blockSize && start + blockSize == tape.getLength()) {
+            tape.expandOnRight();
+        }
+        machine.setTime(machine.getTime() + entry.steps);
+        machine.setCurrentState(program.getNewState(entry.lastTransition));
+        machine.setCurrentInstruction(program.getInstruction(entry.lastTransition));
+        return entry.state;
+    }
+
+    // Runs the program over a copy of the probed block until the head leaves it or the next transition halts or is
+    // missing, which are left to a regular step. Returns null if the traversal goes on too long
+    private Entry traverse(CompiledProgram program, int state, int offset) {
+        System.arraycopy(probe.contents, 0, cells, 0, blockSize);
+        int limit = STEP_LIMIT_PER_CELL * blockSize;
+        int lastTransition = -1;
+        int steps = 0;
+        for (int count = 0; offset >= 0 && offset < blockSize; count++) {
+            int transition = program.transition(state, cells[offset]);
+            if (transition < 0 || program.isHalt(transition)) break;
+            if (count == limit) return null;
+            cells[offset] = program.getWriteSymbol(transition);
+            offset += program.getMove(transition);
+            state = program.getNextState(transition);
+            steps += program.getSteps(transition);
+            lastTransition = transition;
+        }
+        return new Entry(cells.clone(), offset, state, lastTransition, steps);
+    }
+
+    // Forgets every traversal and resets the statistics
+    public void clear() {
+        entries.clear();
+        cooldown = 0;
+        hits = 0;
+        misses = 0;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Number of traversals remembered
+    public int getSize() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    // Fraction of lookups answered by the cache, or 0 before any lookup
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+}
@@ -0,0 +1,580 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Enumerates every n-state, m-symbol program in tree-normal form and runs each from a blank tape, looking for the
+ * longest-running and the widest-reaching halting programs. A program is an int per (state, symbol) slot, 0 while
+ * the slot is undefined, and halting means reaching an undefined slot, that step counting as the halting step.
+ *
+ * <p>Each candidate runs until it reaches an undefined slot. That slot then either halts the program, which is
+ * recorded, or is filled in every way that is not isomorphic to another: new states and new symbols are only
+ * introduced in order, and the first transition always moves right, mirror images being equivalent. The child then
+ * carries on from the configuration its parent stopped in. Candidates are dropped as non-halting when no undefined
+ * slot is left, when no undefined slot's state can be reached from the current state, or when the head enters blank
+ * tape in a state that keeps it moving outwards. Candidates that reach the step budget are counted as undecided.
+ *
+ * <p>The top of the tree is split into a fixed number of work units, always in the same order, which run in
+ * parallel. Progress is saved to the checkpoint file as units complete, and a search started with an existing
+ * checkpoint file resumes by skipping the units it records
+ */
+public class BusyBeaverSearch {
+
+    private static final int MAGIC = 0x4A544242; // "JTBB"
+    private static final int VERSION = 1;
+
+    // Slot encoding: bit 0 set when defined, bit 1 the move (set for right), then 8 bits of symbol written and the
+    // next state above them
+    private static final int DEFINED = 1;
+    private static final int RIGHT = 2;
+    private static final int WRITE_SHIFT = 2;
+    private static final int NEXT_SHIFT = 10;
+
+    // Searches made without an executor of their own share a pool of daemon threads, one per processor, so the units
+    // neither queue behind nor hold up work on the common fork-join pool while run() waits for them
+    private static final Executor DEFAULT_EXECUTOR = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "busy-beaver-search");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final int states;
+    private final int symbols;
+    private final long maxSteps;
+    private Executor executor = DEFAULT_EXECUTOR;
+    private int unitCount = 1024;
+    private Path checkpointFile;
+    private Duration checkpointInterval = Duration.ofSeconds(30);
+    private final AtomicBoolean stopped = new AtomicBoolean();
+
+    public BusyBeaverSearch(int states, int symbols, long maxSteps) {
+        if (states < 1 || symbols < 2 || symbols > 256) {
+            throw new IllegalArgumentException("Need at least 1 state and between 2 and 256 symbols");
+        }
+        this.states = states;
+        this.symbols = symbols;
+        this.maxSteps = maxSteps;
+    }
+
+    // A halting program and what its run from a blank tape used
+    public static class Champion {
+        private final int[] table;
+        private final long steps;
+        private final int ones;
+        private final int space;
+
+        private Champion(int[] table, long steps, int ones, int space) {
+            this.table = table;
+            this.steps = steps;
+            this.ones = ones;
+            this.space = space;
+        }
+
+        public int[] getTable() {
+            return table.clone();
+        }
+
+        // Steps including the halting step
+        public long getSteps() {
+            return steps;
+        }
+
+        // Non-blank cells left on the tape, assuming the halting step writes a non-blank symbol
+        public int getOnes() {
+            return ones;
+        }
+
+        // Cells the head visited
+        public int getSpace() {
+            return space;
+        }
+    }
+
+    // Counters and champions, for one work unit or, merged, for the whole search
+    public static class Statistics {
+        private long nodes;
+        private long halting;
+        private long nonHalting;
+        private long undecided;
+        private Champion stepsChampion;
+        private Champion spaceChampion;
+        private boolean complete;
+
+        private void record(int[] table, long steps, int ones, int space) {
+            halting++;
+            offer(new Champion(table, steps, ones, space));
+        }
+
+        // Ties go to the lowest table, so the champions do not depend on the order units finish in
+        private void offer(Champion champion) {
+            if (stepsChampion == null || champion.steps > stepsChampion.steps || champion.steps == stepsChampion.steps
+                    && Arrays.compare(champion.table, stepsChampion.table) < 0) {
+                stepsChampion = champion;
+            }
+            if (spaceChampion == null || champion.space > spaceChampion.space || champion.space == spaceChampion.space
+                    && Arrays.compare(champion.table, spaceChampion.table) < 0) {
+                spaceChampion = champion;
+            }
+        }
+
+        private void merge(Statistics other) {
+            nodes += other.nodes;
+            halting += other.halting;
+            nonHalting += other.nonHalting;
+            undecided += other.undecided;
+            if (other.stepsChampion != null) offer(other.stepsChampion);
+            if (other.spaceChampion != null) offer(other.spaceChampion);
+        }
+
+        // Candidates run, each of them one node of the tree
+        public long getNodes() {
+            return nodes;
+        }
+
+        public long getHalting() {
+            return halting;
+        }
+
+        public long getNonHalting() {
+            return nonHalting;
+        }
+
+        // Candidates that used up the step budget without halting or being proven non-halting
+        public long getUndecided() {
+            return undecided;
+        }
+
+        // Halting program that ran the most steps, or null
+        public Champion getStepsChampion() {
+            return stepsChampion;
+        }
+
+        // Halting program whose head visited the most cells, or null
+        public Champion getSpaceChampion() {
+            return spaceChampion;
+        }
+
+        // Whether every work unit has been explored
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
+    // A candidate program together with the configuration its run has reached
+    private static final class Node {
+        int[] table;
+        byte[] tape;
+        int head;
+        int low; // Leftmost and rightmost cells visited
+        int high;
+        int state;
+        long steps;
+        int highestState; // Highest state and symbol used so far, for introducing new ones in order
+        int highestSymbol;
+        int defined;
+
+        Node copy() {
+            Node node = new Node();
+            node.table = table.clone();
+            node.tape = tape.clone();
+            node.head = head;
+            node.low = low;
+            node.high = high;
+            node.state = state;
+            node.steps = steps;
+            node.highestState = highestState;
+            node.highestSymbol = highestSymbol;
+            node.defined = defined;
+            return node;
+        }
+    }
+
+    // Runs the search, resuming from the checkpoint file if one is set and exists, until every unit is explored or
+    // the calling thread is interrupted, in which case progress so far is saved before InterruptedException is thrown
+    public Statistics run() throws IOException, InterruptedException {
+        stopped.set(false);
+
+        // Split the top of the tree into units, recording what is decided on the way
+        Statistics total = new Statistics();
+        List<Node> units = new ArrayList<>();
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        queue.add(root());
+        while (!queue.isEmpty() && queue.size() + units.size() < unitCount) {
+            List<Node> children = new ArrayList<>();
+            run(queue.poll(), total, children);
+            queue.addAll(children);
+        }
+        units.addAll(queue);
+
+        BitSet done = new BitSet(units.size());
+        if (checkpointFile != null && Files.exists(checkpointFile)) {
+            total = load(units.size(), done);
+        }
+
+        BlockingQueue<Object[]> completed = new LinkedBlockingQueue<>();
+        int pending = 0;
+        for (int i = 0; i < units.size(); i++) {
+            if (done.get(i)) continue;
+            int index = i;
+            Node unit = units.get(i);
+            pending++;
+            executor.execute(() -> {
+                Statistics statistics = new Statistics();
+                try {
+                    explore(unit, statistics);
+                    completed.add(new Object[]{index, statistics});
+                } catch (Throwable e) {
+                    completed.add(new Object[]{index, e});
+                }
+            });
+        }
+
+        long interval = checkpointInterval.toNanos();
+        long lastCheckpoint = System.nanoTime();
+        try {
+            for (; pending > 0; pending--) {
+                Object[] result = completed.take();
+                if (result[1] instanceof Throwable) {
+                    throw new IllegalStateException("Search failed", (Throwable) result[1]);
+                }
+                Statistics statistics = (Statistics) result[1];
+                if (!statistics.complete) continue;
+                total.merge(statistics);
+                done.set((Integer) result[0]);
+
+                if (checkpointFile != null && System.nanoTime() - lastCheckpoint >= interval) {
+                    save(total, done);
+                    lastCheckpoint = System.nanoTime();
+                }
+            }
+        } finally {
+            stopped.set(true);
+            total.complete = done.cardinality() == units.size();
+            if (checkpointFile != null) {
+                save(total, done);
+            }
+        }
+        return total;
+    }
+
+    private Node root() {
+        Node node = new Node();
+        node.table = new int[states * symbols];
+        node.tape = new byte[64];
+        node.head = node.low = node.high = 32;
+        return node;
+    }
+
+    // Depth-first exploration of one unit's subtree
+    private void explore(Node unit, Statistics statistics) {
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(unit);
+        List<Node> children = new ArrayList<>();
+        while (!stack.isEmpty()) {
+            if (stopped.get()) return;
+            children.clear();
+            run(stack.pop(), statistics, children);
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+        statistics.complete = true;
+    }
+
+    // Runs a candidate until it reaches an undefined slot, whose fillings are added to children, or is decided
+    private void run(Node node, Statistics statistics, List<Node> children) {
+        statistics.nodes++;
+        int[] table = node.table;
+        while (true) {
+            if (node.steps >= maxSteps) {
+                statistics.undecided++;
+                return;
+            }
+
+            int symbol = node.tape[node.head] & 0xFF;
+            int slot = table[node.state * symbols + symbol];
+            if (slot == 0) {
+                branch(node, symbol, statistics, children);
+                return;
+            }
+
+            node.tape[node.head] = (byte) ((slot >>> WRITE_SHIFT) & 0xFF);
+            boolean right = (slot & RIGHT) != 0;
+            node.head += right ? 1 : -1;
+            if (node.head < 0 || node.head == node.tape.length) {
+                grow(node);
+            }
+            node.state = slot >>> NEXT_SHIFT;
+            node.steps++;
+
+            // Entering blank tape in a state that writes, moves outwards and stays in that state never ends
+            boolean outside = right ? node.head > node.high : node.head < node.low;
+            if (outside) {
+                if (right) node.high = node.head;
+                else node.low = node.head;
+                int blank = table[node.state * symbols];
+                if (blank != 0 && blank >>> NEXT_SHIFT == node.state && (blank & RIGHT) == (slot & RIGHT)) {
+                    statistics.nonHalting++;
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void grow(Node node) {
+        int shift = node.tape.length;
+        byte[] tape = new byte[node.tape.length * 2];
+        System.arraycopy(node.tape, 0, tape, node.head < 0 ? shift : 0, node.tape.length);
+        if (node.head < 0) {
+            node.head += shift;
+            node.low += shift;
+            node.high += shift;
+        }
+        node.tape = tape;
+    }
+
+    // Records the halt at an undefined slot, then fills the slot in every non-isomorphic way that can still halt
+    private void branch(Node node, int symbol, Statistics statistics, List<Node> children) {
+        int ones = node.tape[node.head] == 0 ? 1 : 0;
+        for (int i = node.low; i <= node.high; i++) {
+            if (node.tape[i] != 0) ones++;
+        }
+        statistics.record(node.table.clone(), node.steps + 1, ones, node.high - node.low + 1);
+        if (node.defined + 1 == node.table.length) return;
+
+        int slotIndex = node.state * symbols + symbol;
+        int lastState = Math.min(node.highestState + 1, states - 1);
+        int lastSymbol = Math.min(node.highestSymbol + 1, symbols - 1);
+        for (int next = 0; next <= lastState; next++) {
+            for (int write = 0; write <= lastSymbol; write++) {
+                for (int move = node.defined == 0 ? 1 : 0; move <= 1; move++) {
+                    int slot = DEFINED | (move == 1 ? RIGHT : 0) | write << WRITE_SHIFT | next << NEXT_SHIFT;
+                    node.table[slotIndex] = slot;
+                    if (!canHalt(node.table, node.state)) {
+                        statistics.nonHalting++;
+                        continue;
+                    }
+                    Node child = node.copy();
+                    child.highestState = Math.max(node.highestState, next);
+                    child.highestSymbol = Math.max(node.highestSymbol, write);
+                    child.defined++;
+                    children.add(child);
+                }
+            }
+        }
+        node.table[slotIndex] = 0;
+    }
+
+    // Whether some state with an undefined slot can be reached from the given state
+    private boolean canHalt(int[] table, int from) {
+        boolean[] seen = new boolean[states];
+        int[] stack = new int[states];
+        int size = 0;
+        stack[size++] = from;
+        seen[from] = true;
+        while (size > 0) {
+            int state = stack[--size];
+            for (int symbol = 0; symbol < symbols; symbol++) {
+                int slot = table[state * symbols + symbol];
+                if (slot == 0) return true;
+                int next = slot >>> NEXT_SHIFT;
+                if (!seen[next]) {
+                    seen[next] = true;
+                    stack[size++] = next;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void save(Statistics total, BitSet done) throws IOException {
+        Path temporary = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(states);
+            out.writeInt(symbols);
+            out.writeLong(maxSteps);
+            out.writeInt(unitCount);
+            long[] words = done.toLongArray();
+            out.writeInt(words.length);
+            for (long word : words) out.writeLong(word);
+            out.writeLong(total.nodes);
+            out.writeLong(total.halting);
+            out.writeLong(total.nonHalting);
+            out.writeLong(total.undecided);
+            writeChampion(out, total.stepsChampion);
+            writeChampion(out, total.spaceChampion);
+        }
+        Files.move(temporary, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeChampion(DataOutputStream out, Champion champion) throws IOException {
+        out.writeBoolean(champion != null);
+        if (champion == null) return;
+        out.writeLong(champion.steps);
+        out.writeInt(champion.ones);
+        out.writeInt(champion.space);
+        out.writeInt(champion.table.length);
+        for (int slot : champion.table) out.writeInt(slot);
+    }
+
+    private Statistics load(int units, BitSet done) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(checkpointFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a search checkpoint: " + checkpointFile);
+            }
+            if (in.readInt() != states || in.readInt() != symbols || in.readLong() != maxSteps
+                    || in.readInt() != unitCount) {
+                throw new IOException("Checkpoint is for a different search: " + checkpointFile);
+            }
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++) words[i] = in.readLong();
+            BitSet saved = BitSet.valueOf(words);
+            if (saved.length() > units) throw new IOException("Checkpoint has more units than the search");
+            done.or(saved);
+
+            Statistics total = new Statistics();
+            total.nodes = in.readLong();
+            total.halting = in.readLong();
+            total.nonHalting = in.readLong();
+            total.undecided = in.readLong();
+            total.stepsChampion = readChampion(in);
+            total.spaceChampion = readChampion(in);
+            return total;
+        }
+    }
+
+    private static Champion readChampion(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) return null;
+        long steps = in.readLong();
+        int ones = in.readInt();
+        int space = in.readInt();
+        int[] table = new int[in.readInt()];
+        for (int i = 0; i < table.length; i++) table[i] = in.readInt();
+        return new Champion(table, steps, ones, space);
+    }
+
+    // Formats a table in the usual notation, such as 1RB1LB_1LA---, with states as letters and --- for undefined
+    public String format(int[] table) {
+        StringBuilder text = new StringBuilder();
+        for (int state = 0; state < states; state++) {
+            if (state > 0) text.append('_');
+            for (int symbol = 0; symbol < symbols; symbol++) {
+                int slot = table[state * symbols + symbol];
+                if (slot == 0) {
+                    text.append("---");
+                } else {
+                    text.append((slot >>> WRITE_SHIFT) & 0xFF).append((slot & RIGHT) != 0 ? 'R' : 'L')
+                            .append((char) ('A' + (slot >>> NEXT_SHIFT)));
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    // Builds the program for the engine, with symbol 0 as the blank and each undefined slot as a halting instruction
+    // that writes 1, so a run from a blank tape takes the same number of steps
+    public Instruction[] toInstructions(int[] table) {
+        State[] names = new State[states];
+        for (int state = 0; state < states; state++) {
+            names[state] = new State(String.valueOf((char) ('A' + state)));
+        }
+        State halt = new State("Z");
+        Instruction[] instructions = new Instruction[table.length];
+        for (int state = 0; state < states; state++) {
+            for (int symbol = 0; symbol < symbols; symbol++) {
+                int slot = table[state * symbols + symbol];
+                instructions[state * symbols + symbol] = slot == 0
+                        ? new Instruction(names[state], symbolChar(symbol), halt, symbolChar(1), HeadDirection.R, true)
+                        : new Instruction(names[state], symbolChar(symbol), names[slot >>> NEXT_SHIFT],
+                        symbolChar((slot >>> WRITE_SHIFT) & 0xFF),
+                        (slot & RIGHT) != 0 ? HeadDirection.R : HeadDirection.L, false);
+            }
+        }
+        return instructions;
+    }
+
+    private static char symbolChar(int symbol) {
+        return symbol == 0 ? Tape.BLANK : (char) ('0' + symbol);
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public int getUnitCount() {
+        return unitCount;
+    }
+
+    // Number of work units the top of the tree is split into; a checkpoint only resumes a search with the same count
+    public void setUnitCount(int unitCount) {
+        if (unitCount <= 0) throw new IllegalArgumentException("Unit count must be positive: " + unitCount);
+        this.unitCount = unitCount;
+    }
+
+    public Path getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    // File progress is saved to and resumed from, or null to keep no checkpoint
+    public void setCheckpointFile(Path checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    public Duration getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    // Minimum time between checkpoints while the search runs; one is always saved when it ends
+    public void setCheckpointInterval(Duration checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+}
@@ -0,0 +1,338 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Saves the configuration of a running machine to a file every so many steps or so often, so that a long run can be
+ * resumed with restore after the JVM has gone away.
+ *
+ * <p>A snapshot is a header (magic and version ints, the time as a long, then ints for the position, flags, current
+ * transition, tape origin, tape length and state name bytes), the UTF-8 name of the current state, the tape cells as
+ * chars and then the program in the binary format of ProgramFormat. Snapshots are built in one of two reused buffers
+ * and written by a background thread to a temporary file that then replaces the target, so the file always holds a
+ * whole snapshot. If both buffers are still busy when a snapshot is due, it is skipped rather than holding up the run.
+ *
+ * <p>Building a snapshot is the one part the run thread does itself: the tape is copied once, straight into the
+ * buffer, so a snapshot still pauses the run for a copy of the whole tape, roughly a millisecond per million cells
+ */
+public class Checkpointer implements Closeable {
+
+    private static final int MAGIC = 0x4A54534E; // "JTSN"
+    private static final int VERSION = 2; // Version 1 stored the time as an int
+    private static final int HEADER_BYTES = 8 * 4 + 8; // Eight ints and the time
+    private static final int HALT_FLAG = 1;
+    private static final int MISSING_FLAG = 2;
+
+    private final Path file;
+    private final Path temporary;
+    private long stepInterval;
+    private long intervalNanos;
+
+    // Two buffers travel between the run and the writer, so one snapshot can be built while the other is written
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(2);
+    private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(2);
+    private Thread writer;
+    private volatile IOException failure;
+
+    // The program image and instruction indices are worked out once per program
+    private CompiledProgram program;
+    private byte[] programImage;
+    private IdentityHashMap<Instruction, Integer> transitions;
+
+    private long lastTime;
+    private long lastNanos;
+    private volatile long written; // Counted by the writer thread alone
+    private long skipped;
+
+    public Checkpointer(Path file) {
+        this.file = file;
+        this.temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        free.add(ByteBuffer.allocateDirect(1 << 16));
+        free.add(ByteBuffer.allocateDirect(1 << 16));
+    }
+
+    // Starts the schedule afresh at the beginning of a run
+    void begin(TuringMachine machine) {
+        lastTime = machine.getTime();
+        lastNanos = System.nanoTime();
+    }
+
+    // Number of steps the run may take before a snapshot is due by step count
+    long stepsUntilDue(TuringMachine machine) {
+        if (stepInterval <= 0) return Long.MAX_VALUE;
+        return Math.max(1, stepInterval - (machine.getTime() - lastTime));
+    }
+
+    // Called by the run between chunks of steps; takes a snapshot if one is due, or skips it if the last two are
+    // still being written
+    void poll(TuringMachine machine) {
+        boolean due = stepInterval > 0 && machine.getTime() - lastTime >= stepInterval;
+        if (!due && intervalNanos > 0) {
+            due = System.nanoTime() - lastNanos >= intervalNanos;
+        }
+        if (!due) return;
+        checkFailure();
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            lastTime = machine.getTime();
+            lastNanos = System.nanoTime();
+            skipped++;
+            return;
+        }
+        capture(machine, buffer);
+    }
+
+    // Takes a snapshot of the machine as it is now and hands it to the writer, waiting for a free buffer if need be
+    public void snapshot(TuringMachine machine) {
+        checkFailure();
+        capture(machine, take(free));
+    }
+
+    private void capture(TuringMachine machine, ByteBuffer buffer) {
+        lastTime = machine.getTime();
+        lastNanos = System.nanoTime();
+
+        prepare(machine.compile());
+        Tape tape = machine.getTape();
+        int length = tape.getLength();
+        byte[] name = machine.getCurrentState().getName().getBytes(StandardCharsets.UTF_8);
+        Integer transition = machine.getCurrentInstruction() == null ? null
+                : transitions.get(machine.getCurrentInstruction());
+
+        int size = HEADER_BYTES + name.length + length * 2 + programImage.length;
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocateDirect(Math.max(size, buffer.capacity() * 2));
+        }
+        buffer.clear();
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(machine.getTime());
+        buffer.putInt(machine.getCurrentPosition());
+        buffer.putInt((machine.isHalt() ? HALT_FLAG : 0) | (machine.isMissingTransition() ? MISSING_FLAG : 0));
+        buffer.putInt(transition == null ? -1 : transition);
+        buffer.putInt(tape.getOrigin());
+        buffer.putInt(length);
+        buffer.putInt(name.length);
+        buffer.put(name);
+        tape.putValues(buffer.asCharBuffer());
+        buffer.position(buffer.position() + length * 2);
+        buffer.put(programImage);
+        buffer.flip();
+
+        startWriter();
+        full.add(buffer);
+    }
+
+    private void prepare(CompiledProgram program) {
+        if (program == this.program) return;
+        ByteArrayOutputStream image = new ByteArrayOutputStream();
+        try {
+            ProgramFormat.write(program, image);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        transitions = new IdentityHashMap<>();
+        for (int t = 0; t < program.getTransitionCount(); t++) {
+            transitions.put(program.getInstruction(t), t);
+        }
+        this.programImage = image.toByteArray();
+        this.program = program;
+    }
+
+    private void startWriter() {
+        if (writer != null) return;
+        writer = new Thread(this::write, "checkpointer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Writer thread: writes each snapshot to the temporary file, forces it to disk and moves it over the target
+    private void write() {
+        try {
+            while (true) {
+                ByteBuffer buffer = full.take();
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(false);
+                } catch (IOException e) {
+                    failure = e;
+                }
+                if (failure == null) {
+                    try {
+                        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                                StandardCopyOption.ATOMIC_MOVE);
+                        written++;
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                free.add(buffer);
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    // Waits until every snapshot taken so far has been written
+    public void flush() {
+        ByteBuffer first = take(free);
+        ByteBuffer second = take(free);
+        free.add(first);
+        free.add(second);
+        checkFailure();
+    }
+
+    private static ByteBuffer take(BlockingQueue<ByteBuffer> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the checkpointer", e);
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) throw new UncheckedIOException(failure);
+    }
+
+    // Writes any pending snapshots and stops the writer thread, which is stopped even if the writing failed
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            if (writer != null) {
+                writer.interrupt();
+                writer = null;
+            }
+        }
+    }
+
+    // Rebuilds a machine from a snapshot file, on an array tape, ready to carry on running where it left off
+    public static TuringMachine restore(Path file) throws IOException {
+        return restore(file, TapeBackend.ARRAY);
+    }
+
+    // Rebuilds a machine from a snapshot file on a tape with the given storage strategy
+    public static TuringMachine restore(Path file, TapeBackend backend) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), backend);
+        }
+    }
+
+    // Rebuilds a machine from a snapshot in a buffer positioned at its first byte
+    public static TuringMachine read(ByteBuffer buffer, TapeBackend backend) throws ProgramFormat.FormatException {
+        if (buffer.remaining() < HEADER_BYTES) throw new ProgramFormat.FormatException("Truncated header");
+        if (buffer.getInt() != MAGIC) throw new ProgramFormat.FormatException("Not a snapshot file");
+        int version = buffer.getInt();
+        if (version != VERSION) throw new ProgramFormat.FormatException("Unsupported version " + version);
+        long time = buffer.getLong();
+        int position = buffer.getInt();
+        int flags = buffer.getInt();
+        int transition = buffer.getInt();
+        int origin = buffer.getInt();
+        int length = buffer.getInt();
+        int nameBytes = buffer.getInt();
+        if (length < 0 || nameBytes < 0) throw new ProgramFormat.FormatException("Negative section size");
+        if (buffer.remaining() < nameBytes + length * 2L) throw new ProgramFormat.FormatException("Truncated snapshot");
+
+        byte[] name = new byte[nameBytes];
+        buffer.get(name);
+        char[] cells = new char[length];
+        buffer.asCharBuffer().get(cells);
+        buffer.position(buffer.position() + length * 2);
+        CompiledProgram program = ProgramFormat.read(buffer.slice());
+        if (transition < -1 || transition >= program.getTransitionCount()) {
+            throw new ProgramFormat.FormatException("Transition out of range");
+        }
+
+        // The current state is the program's own object where the program knows it
+        State state = new State(new String(name, StandardCharsets.UTF_8));
+        int stateId = program.stateId(state);
+        TuringMachine machine = new TuringMachine(stateId < 0 ? state : program.getState(stateId));
+        machine.setProgram(program);
+        machine.setTape(backend.create(cells, origin, program));
+        machine.setCurrentPosition(position);
+        machine.setTime(time);
+        machine.setHalt((flags & HALT_FLAG) != 0);
+        machine.setMissingTransition((flags & MISSING_FLAG) != 0);
+        if (transition >= 0) {
+            machine.setCurrentInstruction(program.getInstruction(transition));
+        }
+        return machine;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getStepInterval() {
+        return stepInterval;
+    }
+
+    // Takes a snapshot whenever the run has advanced this many steps since the last one, or never if 0
+    public void setStepInterval(long stepInterval) {
+        if (stepInterval < 0) throw new IllegalArgumentException("Step interval cannot be negative: " + stepInterval);
+        this.stepInterval = stepInterval;
+    }
+
+    public Duration getInterval() {
+        return Duration.ofNanos(intervalNanos);
+    }
+
+    // Takes a snapshot whenever this much time has passed since the last one, or never if zero. Time is checked
+    // between chunks of the run's check interval
+    public void setInterval(Duration interval) {
+        if (interval.isNegative()) throw new IllegalArgumentException("Interval cannot be negative");
+        this.intervalNanos = interval.toNanos();
+    }
+
+    // Number of snapshots written to the file so far
+    public long getWritten() {
+        return written;
+    }
+
+    // Number of snapshots skipped because the writer was still busy with earlier ones
+    public long getSkipped() {
+        return skipped;
+    }
+}
@@ -0,0 +1,321 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dense transition table built from an instruction set, with states and symbols interned to small integer ids
+ */
+public class CompiledProgram {
+
+    private final State[] states; // Interned states, indexed by state id
+    private final HashMap<String, Integer> stateIds; // State name to state id
+    private final char[] alphabet; // Interned symbols, indexed by symbol id
+    private final int[] symbolIds; // Symbol id for every char up to the highest symbol in the alphabet, -1 if unknown
+    private final int symbolCount;
+    private final int[] table; // Transition index for [state * symbolCount + symbol], -1 if no instruction exists
+
+    // Per-transition columns, indexed by the position of the instruction in the source program
+    private final Instruction[] instructions; // Built on first use for programs loaded from the binary format
+    private final int[] oldStates;
+    private final char[] givenSymbols;
+    private final int[] nextStates;
+    private final State[] newStates;
+    private final char[] writeSymbols;
+    private final int[] moves;
+    private final boolean[] halts;
+    private final int[] steps; // Steps each transition counts for, more than one for folded transitions
+    private final boolean weighted; // Whether any transition counts for more than one step
+    private final Sweep[] sweeps; // Sweep a transition belongs to, null if it is not a self-loop
+    private final int hash;
+
+    // Builds a program from its interned tables; instructions may be null, or hold nulls, to be built on demand
+    CompiledProgram(State[] states, char[] alphabet, int[] table, int[] oldStates, char[] givenSymbols,
+                    int[] nextStates, char[] writeSymbols, int[] moves, boolean[] halts, int[] steps,
+                    Instruction[] instructions) {
+        this.states = states;
+        this.alphabet = alphabet;
+        this.symbolCount = alphabet.length;
+        this.table = table;
+        this.oldStates = oldStates;
+        this.givenSymbols = givenSymbols;
+        this.nextStates = nextStates;
+        this.writeSymbols = writeSymbols;
+        this.moves = moves;
+        this.halts = halts;
+        this.steps = steps;
+        this.weighted = Arrays.stream(steps).anyMatch(count -> count != 1);
+        this.instructions = instructions != null ? instructions : new Instruction[oldStates.length];
+
+        this.stateIds = new HashMap<>();
+        for (int state = 0; state < states.length; state++) {
+            stateIds.putIfAbsent(states[state].getName(), state);
+        }
+
+        char maxSymbol = 0;
+        for (char symbol : alphabet) {
+            if (symbol > maxSymbol) maxSymbol = symbol;
+        }
+        this.symbolIds = new int[symbolCount == 0 ? 0 : maxSymbol + 1];
+        Arrays.fill(symbolIds, -1);
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            symbolIds[alphabet[symbol]] = symbol;
+        }
+
+        this.newStates = new State[nextStates.length];
+        for (int i = 0; i < nextStates.length; i++) {
+            newStates[i] = states[nextStates[i]];
+        }
+        this.sweeps = buildSweeps();
+        this.hash = (Arrays.hashCode(table) * 31 + Arrays.hashCode(writeSymbols)) * 31 + Arrays.hashCode(steps);
+    }
+
+    private static CompiledProgram build(Instruction[] instructions) {
+        HashMap<String, Integer> stateIds = new HashMap<>();
+
+        // Intern every state and symbol mentioned by the program
+        ArrayList<State> interned = new ArrayList<>();
+        HashMap<Character, Integer> symbols = new HashMap<>();
+        for (Instruction instruction : instructions) {
+            intern(instruction.getOldState(), interned, stateIds);
+            intern(instruction.getNewState(), interned, stateIds);
+            symbols.putIfAbsent(instruction.getGivenSymbol(), symbols.size());
+        }
+        int symbolCount = symbols.size();
+        char[] alphabet = new char[symbolCount];
+        for (Map.Entry<Character, Integer> entry : symbols.entrySet()) {
+            alphabet[entry.getValue()] = entry.getKey();
+        }
+
+        // Build the transition columns and the dense table, later quintuples overriding earlier ones
+        int count = instructions.length;
+        int[] oldStates = new int[count];
+        char[] givenSymbols = new char[count];
+        int[] nextStates = new int[count];
+        char[] writeSymbols = new char[count];
+        int[] moves = new int[count];
+        boolean[] halts = new boolean[count];
+        int[] steps = new int[count];
+        int[] table = new int[interned.size() * symbolCount];
+        Arrays.fill(table, -1);
+
+        for (int i = 0; i < count; i++) {
+            Instruction instruction = instructions[i];
+            oldStates[i] = stateIds.get(instruction.getOldState().getName());
+            givenSymbols[i] = instruction.getGivenSymbol();
+            nextStates[i] = stateIds.get(instruction.getNewState().getName());
+            writeSymbols[i] = instruction.getWriteSymbol();
+            moves[i] = instruction.getDirection() == HeadDirection.L ? -1
+                    : instruction.getDirection() == HeadDirection.R ? 1 : 0;
+            halts[i] = instruction.isHalt();
+            steps[i] = instruction.getSteps();
+            table[oldStates[i] * symbolCount + symbols.get(givenSymbols[i])] = i;
+        }
+
+        // Instructions whose new state is another object with the same name still resolve to that object
+        CompiledProgram program = new CompiledProgram(interned.toArray(new State[0]), alphabet, table, oldStates,
+                givenSymbols, nextStates, writeSymbols, moves, halts, steps, instructions.clone());
+        for (int i = 0; i < count; i++) {
+            program.newStates[i] = instructions[i].getNewState();
+        }
+        return program;
+    }
+
+    // Groups the self-looping transitions of every state by direction. Only transitions that are reachable through
+    // the table count, so overridden quintuples do not take part in sweeps, and folded transitions are left out as
+    // a sweep counts one step per cell
+    private Sweep[] buildSweeps() {
+        Sweep[] sweeps = new Sweep[instructions.length];
+        for (int state = 0; state < states.length; state++) {
+            for (int move = -1; move <= 1; move += 2) {
+                Sweep sweep = null;
+                for (int symbol = 0; symbol < symbolCount; symbol++) {
+                    int transition = table[state * symbolCount + symbol];
+                    if (transition < 0 || nextStates[transition] != state || halts[transition]
+                            || moves[transition] != move || steps[transition] != 1) continue;
+                    if (sweep == null) {
+                        sweep = new Sweep(move, symbolIds.length);
+                    }
+                    sweep.loops[alphabet[symbol]] = true;
+                    sweep.rewrite[alphabet[symbol]] = writeSymbols[transition];
+                    sweeps[transition] = sweep;
+                }
+            }
+        }
+        return sweeps;
+    }
+
+    // Self-looping transitions of one state in one direction, which can be applied to a whole stretch of tape at once
+    public static class Sweep {
+        private final int move;
+        final boolean[] loops; // Indexed by symbol, whether the symbol keeps the sweep going
+        final char[] rewrite; // Indexed by symbol, what the symbol is overwritten with
+
+        private Sweep(int move, int symbolLimit) {
+            this.move = move;
+            this.loops = new boolean[symbolLimit];
+            this.rewrite = new char[symbolLimit];
+        }
+
+        public int getMove() {
+            return move;
+        }
+    }
+
+    private static void intern(State state, ArrayList<State> interned, HashMap<String, Integer> stateIds) {
+        if (!stateIds.containsKey(state.getName())) {
+            stateIds.put(state.getName(), interned.size());
+            interned.add(state);
+        }
+    }
+
+    // Compiles a snapshot of the given instruction set; later changes to the instructions are not reflected
+    public static CompiledProgram compile(Instruction[] instructions) {
+        return build(instructions);
+    }
+
+    // Returns the id of the given state, or -1 if the program never mentions it
+    public int stateId(State state) {
+        Integer id = stateIds.get(state.getName());
+        return id == null ? -1 : id;
+    }
+
+    // Returns the id of the given symbol, or -1 if no instruction reads it
+    public int symbolId(char symbol) {
+        return symbol < symbolIds.length ? symbolIds[symbol] : -1;
+    }
+
+    // Returns the index of the transition for a state id and a tape symbol, or -1 if there is none
+    public int transition(int state, char symbol) {
+        if (state < 0 || symbol >= symbolIds.length) return -1;
+        int id = symbolIds[symbol];
+        return id < 0 ? -1 : table[state * symbolCount + id];
+    }
+
+    // Getters
+
+    public int getStateCount() {
+        return states.length;
+    }
+
+    public int getSymbolCount() {
+        return symbolCount;
+    }
+
+    public State getState(int state) {
+        return states[state];
+    }
+
+    public char getSymbol(int symbol) {
+        return alphabet[symbol];
+    }
+
+    public int getTransitionCount() {
+        return instructions.length;
+    }
+
+    public Instruction getInstruction(int transition) {
+        Instruction instruction = instructions[transition];
+        return instruction != null ? instruction : materialize(transition);
+    }
+
+    // Builds the instruction object of a transition loaded without one
+    private synchronized Instruction materialize(int transition) {
+        if (instructions[transition] == null) {
+            int move = moves[transition];
+            instructions[transition] = new Instruction(states[oldStates[transition]], givenSymbols[transition],
+                    states[nextStates[transition]], writeSymbols[transition],
+                    move < 0 ? HeadDirection.L : move > 0 ? HeadDirection.R : HeadDirection.C, halts[transition],
+                    steps[transition]);
+        }
+        return instructions[transition];
+    }
+
+    public int getOldState(int transition) {
+        return oldStates[transition];
+    }
+
+    public char getGivenSymbol(int transition) {
+        return givenSymbols[transition];
+    }
+
+    public int getNextState(int transition) {
+        return nextStates[transition];
+    }
+
+    public State getNewState(int transition) {
+        return newStates[transition];
+    }
+
+    public char getWriteSymbol(int transition) {
+        return writeSymbols[transition];
+    }
+
+    public int getMove(int transition) {
+        return moves[transition];
+    }
+
+    public boolean isHalt(int transition) {
+        return halts[transition];
+    }
+
+    public int getSteps(int transition) {
+        return steps[transition];
+    }
+
+    // Whether some transition counts for more than one step, which the generated code does not support
+    public boolean isWeighted() {
+        return weighted;
+    }
+
+    // Returns the sweep the transition belongs to, or null if it does not loop back to its own state
+    public Sweep getSweep(int transition) {
+        return sweeps[transition];
+    }
+
+    // Programs are equal when their transition tables are, whatever their states are called
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof CompiledProgram)) return false;
+        CompiledProgram program = (CompiledProgram) other;
+        return hash == program.hash
+                && states.length == program.states.length
+                && Arrays.equals(alphabet, program.alphabet)
+                && Arrays.equals(table, program.table)
+                && Arrays.equals(nextStates, program.nextStates)
+                && Arrays.equals(writeSymbols, program.writeSymbols)
+                && Arrays.equals(moves, program.moves)
+                && Arrays.equals(halts, program.halts)
+                && Arrays.equals(steps, program.steps);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,117 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+/**
+ * Brent's cycle detection over the configurations of a run. The tape is hashed incrementally, blank cells counting
+ * for nothing so expansions do not change it, and a hash match is confirmed against a saved copy of the
+ * configuration before a cycle is reported
+ */
+final class CycleDetector {
+
+    private long tapeHash; // Sum of the hashes of every non-blank cell
+
+    // Configuration saved by Brent's algorithm, compared against every later one
+    private long savedHash;
+    private int savedState;
+    private int savedPosition;
+    private char[] savedTape;
+    private int savedOrigin;
+
+    private long power = 1;
+    private long lambda;
+    private long cycleLength;
+
+    CycleDetector(Tape tape, int state, int position) {
+        for (int i = 0; i < tape.getLength(); i++) {
+            tapeHash += cellHash(i - tape.getOrigin(), tape.getValue(i));
+        }
+        save(tape, state, position, configurationHash(state, position));
+    }
+
+    // Updates the tape hash for a write of the given symbol over the old one at a position
+    void write(int position, char oldSymbol, char newSymbol) {
+        tapeHash += cellHash(position, newSymbol) - cellHash(position, oldSymbol);
+    }
+
+    // Called after every step; returns true once the current configuration is proven to repeat the saved one
+    boolean step(Tape tape, int state, int position) {
+        lambda++;
+        long hash = configurationHash(state, position);
+        if (hash == savedHash && matches(tape, state, position)) {
+            cycleLength = lambda;
+            return true;
+        }
+
+        // Move the saved configuration forward at every power of two
+        if (lambda == power) {
+            save(tape, state, position, hash);
+            power *= 2;
+            lambda = 0;
+        }
+        return false;
+    }
+
+    // Number of steps after which the configuration repeats, or 0 if no cycle has been found
+    long getCycleLength() {
+        return cycleLength;
+    }
+
+    private void save(Tape tape, int state, int position, long hash) {
+        savedHash = hash;
+        savedState = state;
+        savedPosition = position;
+        savedTape = tape.getValues();
+        savedOrigin = tape.getOrigin();
+    }
+
+    // Compares cell by cell over both tapes' extents, treating cells beyond either tape as blank
+    private boolean matches(Tape tape, int state, int position) {
+        if (state != savedState || position != savedPosition) return false;
+        int from = Math.min(-tape.getOrigin(), -savedOrigin);
+        int to = Math.max(tape.getLength() - tape.getOrigin(), savedTape.length - savedOrigin);
+        for (int cell = from; cell < to; cell++) {
+            int index = cell + tape.getOrigin();
+            int savedIndex = cell + savedOrigin;
+            char symbol = index >= 0 && index < tape.getLength() ? tape.getValue(index) : Tape.BLANK;
+            char saved = savedIndex >= 0 && savedIndex < savedTape.length ? savedTape[savedIndex] : Tape.BLANK;
+            if (symbol != saved) return false;
+        }
+        return true;
+    }
+
+    private long configurationHash(int state, int position) {
+        return tapeHash + mix(((long) state << 32) ^ (position & 0xffffffffL) ^ 0x5bd1e995L);
+    }
+
+    private static long cellHash(int position, char symbol) {
+        return symbol == Tape.BLANK ? 0 : mix(((long) position << 16) ^ symbol);
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
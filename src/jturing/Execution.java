@@ -0,0 +1,128 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+/**
+ * State of a single run of a compiled program: its tape, head position, current state and time. Many executions
+ * can share one immutable CompiledProgram, each on its own thread
+ */
+public class Execution {
+
+    private final CompiledProgram program;
+    private final Tape tape;
+    private int state;
+    private int position; // Relative to the tape's original first cell, like TuringMachine.getCurrentPosition
+    private long time;
+    private RunOutcome outcome; // Null until the run has halted or hit a missing transition
+
+    public Execution(CompiledProgram program, State initialState, Tape tape) {
+        this(program, initialState, 0, tape);
+    }
+
+    public Execution(CompiledProgram program, State initialState, int position, Tape tape) {
+        this.program = program;
+        this.tape = tape;
+        this.state = program.stateId(initialState);
+        this.position = position;
+        this.time = 0;
+    }
+
+    // Executes up to maxSteps further steps, returning BUDGET_EXHAUSTED if the run could continue after them. As with
+    // RunOptions, a folded transition that starts inside the budget is taken whole and may carry the time past it
+    public RunOutcome run(long maxSteps) {
+        if (outcome != null) return outcome;
+
+        Tape tape = this.tape;
+        CompiledProgram program = this.program;
+        int index = position + tape.getOrigin();
+        int state = this.state;
+        long steps = 0;
+        RunOutcome result = RunOutcome.BUDGET_EXHAUSTED;
+
+        while (steps < maxSteps) {
+            int transition = program.transition(state, tape.getValue(index));
+            if (transition < 0) {
+                result = RunOutcome.MISSING_TRANSITION;
+                break;
+            }
+
+            tape.write(index, program.getWriteSymbol(transition));
+            int move = program.getMove(transition);
+            if (move < 0) {
+                if (index == 0) {
+                    tape.expandOnLeft();
+                } else {
+                    index--;
+                }
+            } else if (move > 0) {
+                if (index == tape.getLength() - 1) {
+                    tape.expandOnRight();
+                }
+                index++;
+            }
+            state = program.getNextState(transition);
+            steps += program.getSteps(transition);
+
+            if (program.isHalt(transition)) {
+                result = RunOutcome.HALTED;
+                break;
+            }
+        }
+
+        this.state = state;
+        this.position = index - tape.getOrigin();
+        this.time += steps;
+        if (result != RunOutcome.BUDGET_EXHAUSTED) {
+            outcome = result;
+        }
+        return result;
+    }
+
+    // Getters
+
+    public CompiledProgram getProgram() {
+        return program;
+    }
+
+    public Tape getTape() {
+        return tape;
+    }
+
+    // Returns the current state, or null if the run started in a state the program never mentions
+    public State getState() {
+        return state < 0 ? null : program.getState(state);
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    // Returns how the run ended, or null if it can still continue
+    public RunOutcome getOutcome() {
+        return outcome;
+    }
+}
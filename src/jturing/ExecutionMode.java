@@ -0,0 +1,48 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+/**
+ * The ways a Turing machine can carry out its run loop. The deterministic modes all produce the same tape, state and
+ * time
+ */
+public enum ExecutionMode {
+
+    // One table lookup and one tape access per step
+    STANDARD,
+
+    // Applies runs of self-looping transitions as a single bulk tape operation
+    ACCELERATED,
+
+    // Runs bytecode generated for the program, with a block per state, falling back to the table when the
+    // program cannot be generated or a transition is missing
+    JIT,
+
+    // Remembers how the program traverses each block of tape it meets, so a traversal seen before is applied in one
+    // lookup. See BlockCache
+    MEMOIZED,
+
+    // Treats every quintuple for a state and symbol as a branch instead of keeping the last one, and explores all
+    // branches breadth-first until one halts. See NondeterministicExplorer
+    NONDETERMINISTIC
+}
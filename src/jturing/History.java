@@ -0,0 +1,263 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.util.ArrayList;
+
+/**
+ * Bounded record of a Turing machine's past: a journal of what each step changed, plus optional periodic checkpoints
+ * of the full configuration
+ */
+public class History {
+
+    private static final byte EXPANDED_LEFT = 1;
+    private static final byte EXPANDED_RIGHT = 2;
+    private static final byte HALTED = 4;
+
+    // Journal ring buffer, one entry per step holding the values the step overwrote
+    private final int capacity;
+    private final int[] positions;
+    private final char[] symbols;
+    private final State[] states;
+    private final Instruction[] instructions;
+    private final byte[] flags;
+    private final int[] steps; // Steps each entry's transition counts for, more than one for folded transitions
+    private int next; // Slot the next entry is written to
+    private int size;
+    private long lastTime; // Time at which the newest entry's step started
+
+    // Checkpoints, oldest first, thinned out when there are too many
+    private int checkpointInterval;
+    private final int maxCheckpoints;
+    private final ArrayList<Checkpoint> checkpoints;
+
+    // Keeps only a journal of the last journalCapacity steps
+    public History(int journalCapacity) {
+        this(journalCapacity, 0, 0);
+    }
+
+    // Keeps a journal of the last journalCapacity steps and a full checkpoint every checkpointInterval steps. Once
+    // there are more than maxCheckpoints, every other one but the newest is dropped and the interval doubles
+    public History(int journalCapacity, int checkpointInterval, int maxCheckpoints) {
+        if (journalCapacity < 0 || checkpointInterval < 0 || (checkpointInterval > 0 && maxCheckpoints < 2)) {
+            throw new IllegalArgumentException("Invalid history budget");
+        }
+        this.capacity = journalCapacity;
+        this.positions = new int[journalCapacity];
+        this.symbols = new char[journalCapacity];
+        this.states = new State[journalCapacity];
+        this.instructions = new Instruction[journalCapacity];
+        this.flags = new byte[journalCapacity];
+        this.steps = new int[journalCapacity];
+        this.checkpointInterval = checkpointInterval;
+        this.maxCheckpoints = maxCheckpoints;
+        this.checkpoints = new ArrayList<>();
+    }
+
+    // Full configuration of a machine at a point in time
+    public static class Checkpoint {
+        private final long time;
+        private final State state;
+        private final int position;
+        private final boolean halt;
+        private final boolean missingTransition;
+        private final Instruction instruction;
+        private final Tape tape;
+
+        private Checkpoint(TuringMachine machine) {
+            this.time = machine.getTime();
+            this.state = machine.getCurrentState();
+            this.position = machine.getCurrentPosition();
+            this.halt = machine.isHalt();
+            this.missingTransition = machine.isMissingTransition();
+            this.instruction = machine.getCurrentInstruction();
+            this.tape = machine.getTape().copy();
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public int getPosition() {
+            return position;
+        }
+
+        public boolean isHalt() {
+            return halt;
+        }
+
+        public boolean isMissingTransition() {
+            return missingTransition;
+        }
+
+        public Tape getTape() {
+            return tape.copy();
+        }
+    }
+
+    // Records the configuration a machine is about to leave, given the symbol under its head, whether the step
+    // expands the tape (-1 on the left, 1 on the right, 0 not at all) and how many steps the transition counts for
+    void record(TuringMachine machine, char symbol, int expansion, int steps) {
+        long time = machine.getTime();
+        if (size > 0 && time != lastTime + this.steps[newest()]) {
+
+            // The machine was changed behind the journal's back, so older entries can no longer be undone
+            size = 0;
+        }
+
+        if (checkpointInterval > 0 && time % checkpointInterval == 0
+                && (checkpoints.isEmpty() || checkpoints.get(checkpoints.size() - 1).time < time)) {
+            checkpoint(machine);
+        }
+
+        if (capacity == 0) return;
+        positions[next] = machine.getCurrentPosition();
+        symbols[next] = symbol;
+        states[next] = machine.getCurrentState();
+        instructions[next] = machine.getCurrentInstruction();
+        flags[next] = (byte) ((expansion < 0 ? EXPANDED_LEFT : expansion > 0 ? EXPANDED_RIGHT : 0)
+                | (machine.isHalt() ? HALTED : 0));
+        this.steps[next] = steps;
+        next = next + 1 == capacity ? 0 : next + 1;
+        if (size < capacity) size++;
+        lastTime = time;
+    }
+
+    // Takes a full checkpoint of the machine's current configuration
+    public void checkpoint(TuringMachine machine) {
+        long time = machine.getTime();
+        while (!checkpoints.isEmpty() && checkpoints.get(checkpoints.size() - 1).time >= time) {
+            checkpoints.remove(checkpoints.size() - 1);
+        }
+        checkpoints.add(new Checkpoint(machine));
+
+        if (maxCheckpoints > 0 && checkpoints.size() > maxCheckpoints) {
+            thin(checkpoints);
+            checkpointInterval *= 2;
+        }
+    }
+
+    // Drops every other checkpoint counting from the oldest, so evenly spaced ones stay evenly spaced at twice the
+    // interval, but keeps the newest whatever its place
+    static <T> void thin(ArrayList<T> checkpoints) {
+        int newest = checkpoints.size() - 1;
+        int kept = 0;
+        for (int i = 0; i <= newest; i += 2) {
+            checkpoints.set(kept++, checkpoints.get(i));
+        }
+        if (newest % 2 != 0) {
+            checkpoints.set(kept++, checkpoints.get(newest));
+        }
+        checkpoints.subList(kept, checkpoints.size()).clear();
+    }
+
+    // Reverts the machine's most recent step, returning false if the journal does not reach back that far
+    boolean undo(TuringMachine machine) {
+        if (size == 0 || machine.getTime() != lastTime + steps[newest()]) return false;
+
+        next = newest();
+        size--;
+        int undone = steps[next];
+        if (size > 0) lastTime -= steps[newest()];
+
+        Tape tape = machine.getTape();
+        byte flag = flags[next];
+        if ((flag & EXPANDED_LEFT) != 0) tape.shrinkOnLeft();
+        if ((flag & EXPANDED_RIGHT) != 0) tape.shrinkOnRight();
+
+        int position = positions[next];
+        tape.write(position + tape.getOrigin(), symbols[next]);
+        machine.setCurrentPosition(position);
+        machine.setCurrentState(states[next]);
+        machine.setCurrentInstruction(instructions[next]);
+        machine.setHalt((flag & HALTED) != 0);
+        machine.setMissingTransition(false); // Entries are only recorded for steps that found a transition
+        machine.setTime(machine.getTime() - undone);
+
+        // Drop the references so undone steps can be collected
+        states[next] = null;
+        instructions[next] = null;
+        return true;
+    }
+
+    private int newest() {
+        return next == 0 ? capacity - 1 : next - 1;
+    }
+
+    // Number of entries that can currently be undone, one per transition executed
+    public int getJournalSize() {
+        return size;
+    }
+
+    // Time the oldest entry's step started at, so the earliest time undoing can reach, or -1 if the journal is empty
+    long getEarliestTime() {
+        if (size == 0) return -1;
+        long time = lastTime;
+        for (int i = 1, slot = newest(); i < size; i++) {
+            slot = slot == 0 ? capacity - 1 : slot - 1;
+            time -= steps[slot];
+        }
+        return time;
+    }
+
+    // Returns the latest checkpoint taken at or before the given time, or null if there is none
+    public Checkpoint getCheckpoint(long time) {
+        Checkpoint found = null;
+        for (Checkpoint checkpoint : checkpoints) {
+            if (checkpoint.time > time) break;
+            found = checkpoint;
+        }
+        return found;
+    }
+
+    // Puts the machine back into the configuration of a checkpoint, forgetting journal entries from later steps
+    void restore(TuringMachine machine, Checkpoint checkpoint) {
+        while (size > 0 && lastTime >= checkpoint.time) {
+            next = newest();
+            states[next] = null;
+            instructions[next] = null;
+            size--;
+            if (size > 0) lastTime -= steps[newest()];
+        }
+
+        machine.setTape(checkpoint.tape.copy());
+        machine.setCurrentPosition(checkpoint.position);
+        machine.setCurrentState(checkpoint.state);
+        machine.setCurrentInstruction(checkpoint.instruction);
+        machine.setHalt(checkpoint.halt);
+        machine.setMissingTransition(checkpoint.missingTransition);
+        machine.setTime(checkpoint.time);
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public int getCheckpointCount() {
+        return checkpoints.size();
+    }
+}
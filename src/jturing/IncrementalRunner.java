@@ -0,0 +1,322 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Runs one compiled program over a series of inputs that differ from each other in a few cells, carrying on from the
+ * last run where it can instead of starting again from step 0.
+ *
+ * <p>Every step reads exactly one cell, the one under the head, and a cell is always read before it is first
+ * written, so the trace of a run only has to keep the time each cell was first read. The earliest first read of a
+ * cell that an edit changes is the first step the edit can affect; everything before it is the same as last time.
+ * The runner keeps checkpoints of the configuration every so often, restores the latest one at or before that step,
+ * swaps in the new input for every cell not read by then, and runs on from there
+ */
+public class IncrementalRunner {
+
+    private static final int UNREAD = -1;
+
+    private final CompiledProgram program;
+    private final State initialState;
+    private final int baseInterval;
+    private final int maxCheckpoints;
+    private TapeBackend tapeBackend = TapeBackend.ARRAY;
+
+    // Trace of the last run: the time each cell was first read, indexed by position + traceOrigin
+    private long[] firstRead = new long[0];
+    private int traceOrigin;
+    private char[] lastInput;
+
+    // Checkpoints of the last run, oldest first, thinned out when there are too many
+    private final ArrayList<Checkpoint> checkpoints = new ArrayList<>();
+    private int checkpointInterval;
+
+    // Configuration the last run ended in
+    private Tape tape;
+    private int state;
+    private int position;
+    private long time;
+    private RunOutcome outcome;
+    private long resumedFrom;
+
+    // Checkpoints every 1024 steps, keeping at most 256
+    public IncrementalRunner(CompiledProgram program, State initialState) {
+        this(program, initialState, 1024, 256);
+    }
+
+    // Checkpoints every checkpointInterval steps. Once there are more than maxCheckpoints, every other one but the
+    // newest is dropped and the interval doubles
+    public IncrementalRunner(CompiledProgram program, State initialState, int checkpointInterval, int maxCheckpoints) {
+        if (checkpointInterval <= 0 || maxCheckpoints < 2) {
+            throw new IllegalArgumentException("Invalid checkpoint budget");
+        }
+        this.program = program;
+        this.initialState = initialState;
+        this.baseInterval = checkpointInterval;
+        this.maxCheckpoints = maxCheckpoints;
+    }
+
+    // Full configuration of the last run at a point in time; the outcome is set only where the run ended for good
+    private static final class Checkpoint {
+        private final long time;
+        private final int state;
+        private final int position;
+        private final int origin;
+        private final char[] cells;
+        private final RunOutcome outcome;
+
+        private Checkpoint(long time, int state, int position, Tape tape, RunOutcome outcome) {
+            this.time = time;
+            this.state = state;
+            this.position = position;
+            this.origin = tape.getOrigin();
+            this.cells = tape.getValues();
+            this.outcome = outcome;
+        }
+    }
+
+    // Runs the program over the input for at most maxSteps steps in all, reusing as much of the last run as the
+    // changes to its input allow. Ends in the same configuration as a run from scratch would, folded transitions
+    // included, which may carry the time past maxSteps as in Execution.run
+    public RunOutcome run(char[] input, long maxSteps) {
+        Checkpoint from = null;
+        if (lastInput != null) {
+            // A missing transition is found by the step at the final time, which must be unaffected and in budget too
+            long limit = Math.min(firstAffected(input), maxSteps);
+            for (Checkpoint checkpoint : checkpoints) {
+                if (checkpoint.time > limit
+                        || checkpoint.time == limit && checkpoint.outcome == RunOutcome.MISSING_TRANSITION) break;
+                from = checkpoint;
+            }
+        }
+        lastInput = input.clone();
+
+        if (from == null) {
+            Arrays.fill(firstRead, UNREAD);
+            checkpoints.clear();
+            checkpointInterval = baseInterval;
+            tape = tapeBackend.create(input.clone(), 0, program);
+            state = program.stateId(initialState);
+            position = 0;
+            time = 0;
+            resumedFrom = 0;
+        } else {
+            restore(from, input);
+        }
+
+        if (from != null && from.outcome != null) {
+            outcome = from.outcome;
+        } else {
+            outcome = execute(maxSteps);
+            checkpoints.add(new Checkpoint(time, state, position, tape,
+                    outcome == RunOutcome.BUDGET_EXHAUSTED ? null : outcome));
+        }
+        return outcome;
+    }
+
+    // Returns the time of the first step that reads a cell in which the input differs from the last one, or
+    // Long.MAX_VALUE if no step of the last run did
+    private long firstAffected(char[] input) {
+        long affected = Long.MAX_VALUE;
+        for (int p = 0; p < Math.max(input.length, lastInput.length); p++) {
+            char was = p < lastInput.length ? lastInput[p] : Tape.BLANK;
+            char now = p < input.length ? input[p] : Tape.BLANK;
+            if (was != now) {
+                long read = getFirstRead(p);
+                if (read != UNREAD && read < affected) affected = read;
+            }
+        }
+        return affected;
+    }
+
+    // Puts the configuration of the checkpoint back with the new input in every cell not read before it, and forgets
+    // whatever the last run did after it
+    private void restore(Checkpoint from, char[] input) {
+        while (checkpoints.get(checkpoints.size() - 1) != from) {
+            checkpoints.remove(checkpoints.size() - 1);
+        }
+        if (from.outcome == null) {
+            checkpoints.remove(checkpoints.size() - 1);
+        }
+
+        // Reads up to the checkpoint stay valid, including the one that found a missing transition. The tape reaches
+        // from the leftmost cell visited to the rightmost one or the end of the input
+        long valid = from.outcome == RunOutcome.MISSING_TRANSITION ? from.time + 1 : from.time;
+        int right = Math.max(input.length, from.position + 1);
+        for (int i = 0; i < firstRead.length; i++) {
+            if (firstRead[i] >= valid) {
+                firstRead[i] = UNREAD;
+            } else if (firstRead[i] != UNREAD) {
+                right = Math.max(right, i - traceOrigin + 1);
+            }
+        }
+        char[] cells = new char[from.origin + right];
+        for (int p = -from.origin; p < right; p++) {
+            long read = getFirstRead(p);
+            if (read != UNREAD) {
+                cells[p + from.origin] = from.cells[p + from.origin];
+            } else {
+                cells[p + from.origin] = p >= 0 && p < input.length ? input[p] : Tape.BLANK;
+            }
+        }
+
+        tape = tapeBackend.create(cells, from.origin, program);
+        state = from.state;
+        position = from.position;
+        time = from.time;
+        resumedFrom = from.time;
+    }
+
+    // Same loop as Execution.run, recording first reads and taking checkpoints on the way
+    private RunOutcome execute(long maxSteps) {
+        Tape tape = this.tape;
+        CompiledProgram program = this.program;
+        int index = position + tape.getOrigin();
+        int state = this.state;
+        long time = this.time;
+        long lastCheckpoint = checkpoints.isEmpty() ? Long.MIN_VALUE
+                : checkpoints.get(checkpoints.size() - 1).time;
+        RunOutcome result = RunOutcome.BUDGET_EXHAUSTED;
+
+        while (time < maxSteps) {
+            int position = index - tape.getOrigin();
+            if (time - lastCheckpoint >= checkpointInterval || lastCheckpoint == Long.MIN_VALUE) {
+                checkpoint(time, state, position, tape);
+                lastCheckpoint = time;
+            }
+            if (getFirstRead(position) == UNREAD) {
+                setFirstRead(position, time);
+            }
+
+            int transition = program.transition(state, tape.getValue(index));
+            if (transition < 0) {
+                result = RunOutcome.MISSING_TRANSITION;
+                break;
+            }
+
+            tape.write(index, program.getWriteSymbol(transition));
+            int move = program.getMove(transition);
+            if (move < 0) {
+                if (index == 0) {
+                    tape.expandOnLeft();
+                } else {
+                    index--;
+                }
+            } else if (move > 0) {
+                if (index == tape.getLength() - 1) {
+                    tape.expandOnRight();
+                }
+                index++;
+            }
+            state = program.getNextState(transition);
+            time += program.getSteps(transition);
+
+            if (program.isHalt(transition)) {
+                result = RunOutcome.HALTED;
+                break;
+            }
+        }
+
+        this.state = state;
+        this.position = index - tape.getOrigin();
+        this.time = time;
+        return result;
+    }
+
+    private void checkpoint(long time, int state, int position, Tape tape) {
+        checkpoints.add(new Checkpoint(time, state, position, tape, null));
+        if (checkpoints.size() > maxCheckpoints) {
+            History.thin(checkpoints);
+            checkpointInterval *= 2;
+        }
+    }
+
+    private long getFirstRead(int position) {
+        int i = position + traceOrigin;
+        return i >= 0 && i < firstRead.length ? firstRead[i] : UNREAD;
+    }
+
+    // Records a first read, growing the trace by at least half its size on the side it runs out
+    private void setFirstRead(int position, long time) {
+        int i = position + traceOrigin;
+        if (i < 0 || i >= firstRead.length) {
+            int grow = Math.max(16, firstRead.length / 2);
+            int left = i < 0 ? Math.max(grow, -i) : 0;
+            int right = i >= firstRead.length ? Math.max(grow, i - firstRead.length + 1) : 0;
+            long[] larger = new long[firstRead.length + left + right];
+            Arrays.fill(larger, UNREAD);
+            System.arraycopy(firstRead, 0, larger, left, firstRead.length);
+            firstRead = larger;
+            traceOrigin += left;
+            i += left;
+        }
+        firstRead[i] = time;
+    }
+
+    // Getters and setters
+
+    public CompiledProgram getProgram() {
+        return program;
+    }
+
+    public Tape getTape() {
+        return tape;
+    }
+
+    // Returns the current state, or null if the run started in a state the program never mentions
+    public State getState() {
+        return state < 0 ? null : program.getState(state);
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public RunOutcome getOutcome() {
+        return outcome;
+    }
+
+    // Time the last run resumed from, 0 if it started from scratch
+    public long getResumedFrom() {
+        return resumedFrom;
+    }
+
+    public int getCheckpointCount() {
+        return checkpoints.size();
+    }
+
+    public TapeBackend getTapeBackend() {
+        return tapeBackend;
+    }
+
+    public void setTapeBackend(TapeBackend tapeBackend) {
+        this.tapeBackend = tapeBackend;
+    }
+}
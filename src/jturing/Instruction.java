@@ -32,15 +32,23 @@ public class Instruction {
     private char writeSymbol; // The symbol to write
     private HeadDirection direction; // The direction to travel in
     private boolean halt; // Whether or not the instruction causes the machine to halt
+    private int steps; // Number of steps the instruction counts for, more than one when it folds several together
 
     public Instruction(State oldState, char givenSymbol, State newState, char writeSymbol, HeadDirection direction,
                        boolean halt) {
+        this(oldState, givenSymbol, newState, writeSymbol, direction, halt, 1);
+    }
+
+    public Instruction(State oldState, char givenSymbol, State newState, char writeSymbol, HeadDirection direction,
+                       boolean halt, int steps) {
+        if (steps < 1) throw new IllegalArgumentException("An instruction counts for at least one step: " + steps);
         this.oldState = oldState;
         this.givenSymbol = givenSymbol;
         this.newState = newState;
         this.writeSymbol = writeSymbol;
         this.direction = direction;
         this.halt = halt;
+        this.steps = steps;
     }
 
     // Exception thrown when a given state-value combination has no pre-programmed instruction association
@@ -92,6 +100,15 @@ public class Instruction {
         this.writeSymbol = writeSymbol;
     }
 
+    public int getSteps() {
+        return steps;
+    }
+
+    public void setSteps(int steps) {
+        if (steps < 1) throw new IllegalArgumentException("An instruction counts for at least one step: " + steps);
+        this.steps = steps;
+    }
+
     public HeadDirection getDirection() {
         return direction;
     }
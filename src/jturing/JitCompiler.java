@@ -0,0 +1,429 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Generates a hidden JVM class per compiled program in which every state is a block of bytecode that switches on
+ * the symbol under the head and jumps straight to the block of the next state
+ */
+public final class JitCompiler {
+
+    private static final String CLASS_NAME = "jturing/GeneratedProgram";
+    private static final String FRAME = "jturing/JitFrame";
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    // Local variable slots of the generated run method
+    private static final int FRAME_SLOT = 1;
+    private static final int STATE_SLOT = 2;
+    private static final int LIMIT_SLOT = 3;
+    private static final int STEPS_SLOT = 4;
+    private static final int LAST_SLOT = 5;
+
+    // Generated programs, keyed by programs with the same transition table. The least recently used are dropped past
+    // the capacity; hidden classes are not held by their loader, so a dropped one can be unloaded
+    private static final int CACHE_CAPACITY = 256;
+    private static final LinkedHashMap<CompiledProgram, JitProgram> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CompiledProgram, JitProgram> eldest) {
+            return size() > CACHE_CAPACITY;
+        }
+    };
+
+    private JitCompiler() {
+    }
+
+    // Returns the generated class for the program, reusing one generated for an identical table. Returns null if
+    // the program cannot be compiled, in which case it should be interpreted
+    static JitProgram compile(CompiledProgram program) {
+        JitProgram jit;
+        synchronized (cache) {
+            jit = cache.get(program);
+        }
+        if (jit == null) {
+            if (program.getStateCount() == 0 || program.isWeighted()) return null;
+            byte[] bytes = generate(program);
+            if (bytes == null) return null;
+            try {
+                Class<?> type = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+                jit = (JitProgram) type.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Could not load generated program", e);
+            }
+            synchronized (cache) {
+                JitProgram existing = cache.putIfAbsent(program, jit);
+                if (existing != null) jit = existing;
+            }
+        }
+        return jit;
+    }
+
+    // Number of generated programs currently cached
+    public static int getCacheSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public static void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    // Builds the class file, or returns null if the run method would exceed the JVM's code size limit
+    private static byte[] generate(CompiledProgram program) {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef("java/lang/Object");
+        int programInterface = pool.classRef("jturing/JitProgram");
+        int objectInit = pool.methodRef("java/lang/Object", "<init>", "()V");
+        int read = pool.methodRef(FRAME, "read", "()C");
+        int write = pool.methodRef(FRAME, "write", "(C)V");
+        int left = pool.methodRef(FRAME, "left", "()V");
+        int right = pool.methodRef(FRAME, "right", "()V");
+        int exit = pool.methodRef(FRAME, "exit", "(IIII)I");
+        int initName = pool.utf8("<init>");
+        int initType = pool.utf8("()V");
+        int runName = pool.utf8("run");
+        int runType = pool.utf8("(L" + FRAME + ";II)I");
+        int codeName = pool.utf8("Code");
+
+        Code code = new Code(pool);
+        int stateCount = program.getStateCount();
+        Label[] states = new Label[stateCount];
+        for (int i = 0; i < stateCount; i++) {
+            states[i] = new Label();
+        }
+
+        // Entry: dispatch on the starting state
+        code.op(0x03).local(0x36, STEPS_SLOT);   // iconst_0, istore
+        code.op(0x02).local(0x36, LAST_SLOT);    // iconst_m1, istore
+        code.local(0x15, STATE_SLOT);            // iload
+        Label unknownState = new Label();
+        code.tableSwitch(unknownState, states);
+        code.bind(unknownState);
+        code.exit(exit, JitProgram.MISSING_TRANSITION, -1);
+
+        for (int state = 0; state < stateCount; state++) {
+            code.bind(states[state]);
+
+            // Stop once the step limit is reached
+            Label underLimit = new Label();
+            code.local(0x15, STEPS_SLOT).local(0x15, LIMIT_SLOT);
+            code.jump(0xa1, underLimit);         // if_icmplt
+            code.exit(exit, JitProgram.LIMIT_REACHED, state);
+            code.bind(underLimit);
+
+            // Switch on the symbol under the head
+            ArrayList<Integer> keys = new ArrayList<>();
+            ArrayList<Integer> transitions = new ArrayList<>();
+            for (int symbol = 0; symbol < program.getSymbolCount(); symbol++) {
+                int transition = program.transition(state, program.getSymbol(symbol));
+                if (transition >= 0) {
+                    keys.add((int) program.getSymbol(symbol));
+                    transitions.add(transition);
+                }
+            }
+            Label[] targets = new Label[keys.size()];
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = new Label();
+            }
+            Label missing = new Label();
+            code.local(0x19, FRAME_SLOT).invoke(read);
+            code.lookupSwitch(missing, keys, targets);
+            code.bind(missing);
+            code.exit(exit, JitProgram.MISSING_TRANSITION, state);
+
+            for (int i = 0; i < targets.length; i++) {
+                int transition = transitions.get(i);
+                code.bind(targets[i]);
+                code.local(0x19, FRAME_SLOT).pushInt(program.getWriteSymbol(transition)).invoke(write);
+                if (program.getMove(transition) != 0) {
+                    code.local(0x19, FRAME_SLOT).invoke(program.getMove(transition) < 0 ? left : right);
+                }
+                code.op(0x84).u1(STEPS_SLOT).u1(1);   // iinc
+                code.pushInt(transition).local(0x36, LAST_SLOT);
+                if (program.isHalt(transition)) {
+                    code.exit(exit, JitProgram.HALTED, program.getNextState(transition));
+                } else {
+                    code.jump(0xc8, states[program.getNextState(transition)]);   // goto_w
+                }
+            }
+        }
+
+        byte[] run = code.toBytes();
+        if (run == null) return null;
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49); // Predates stack map frames, so the generated code needs none
+            pool.write(out);
+            out.writeShort(0x0030); // ACC_FINAL | ACC_SUPER
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(programInterface);
+            out.writeShort(0);
+            out.writeShort(2);
+
+            // Default constructor
+            out.writeShort(0x0001);
+            out.writeShort(initName);
+            out.writeShort(initType);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + 5);
+            out.writeShort(1);
+            out.writeShort(1);
+            out.writeInt(5);
+            out.write(new byte[]{0x2a, (byte) 0xb7, (byte) (objectInit >> 8), (byte) objectInit, (byte) 0xb1});
+            out.writeShort(0);
+            out.writeShort(0);
+
+            // run(JitFrame, int, int)
+            out.writeShort(0x0001);
+            out.writeShort(runName);
+            out.writeShort(runType);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + run.length);
+            out.writeShort(6);
+            out.writeShort(6);
+            out.writeInt(run.length);
+            out.write(run);
+            out.writeShort(0);
+            out.writeShort(0);
+
+            out.writeShort(0);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Class file constant pool, deduplicating entries
+    private static class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final HashMap<String, Integer> entries = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) {
+            Integer index = entries.get("U" + value);
+            if (index != null) return index;
+            try {
+                out.writeByte(1);
+                out.writeUTF(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            entries.put("U" + value, count);
+            return count++;
+        }
+
+        int classRef(String name) {
+            return entry("C" + name, 7, utf8(name), -1);
+        }
+
+        int integer(int value) {
+            return entry("I" + value, 3, value >>> 16, value & 0xffff);
+        }
+
+        int methodRef(String owner, String name, String type) {
+            int nameAndType = entry("N" + name + type, 12, utf8(name), utf8(type));
+            return entry("M" + owner + '.' + name + type, 10, classRef(owner), nameAndType);
+        }
+
+        // Writes a tag followed by one or two 16-bit values
+        private int entry(String key, int tag, int first, int second) {
+            Integer index = entries.get(key);
+            if (index != null) return index;
+            try {
+                out.writeByte(tag);
+                out.writeShort(first);
+                if (second >= 0) out.writeShort(second);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            entries.put(key, count);
+            return count++;
+        }
+
+        void write(DataOutputStream target) throws IOException {
+            target.writeShort(count);
+            bytes.writeTo(target);
+        }
+    }
+
+    // Position in the code, resolved when bound
+    private static class Label {
+        private int position = -1;
+    }
+
+    // Bytecode buffer with forward jumps patched once all labels are bound
+    private static class Code {
+        private final ConstantPool pool;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final ArrayList<int[]> patches = new ArrayList<>(); // {offset position, instruction position, width}
+        private final ArrayList<Label> patchLabels = new ArrayList<>();
+
+        Code(ConstantPool pool) {
+            this.pool = pool;
+        }
+
+        Code op(int opcode) {
+            bytes.write(opcode);
+            return this;
+        }
+
+        Code u1(int value) {
+            bytes.write(value);
+            return this;
+        }
+
+        Code u2(int value) {
+            bytes.write(value >> 8);
+            bytes.write(value);
+            return this;
+        }
+
+        Code u4(int value) {
+            return u2(value >>> 16).u2(value & 0xffff);
+        }
+
+        Code local(int opcode, int slot) {
+            return op(opcode).u1(slot);
+        }
+
+        Code invoke(int methodRef) {
+            return op(0xb6).u2(methodRef); // invokevirtual
+        }
+
+        Code pushInt(int value) {
+            if (value >= -1 && value <= 5) return op(0x03 + value);   // iconst_<n>
+            if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) return op(0x10).u1(value);   // bipush
+            if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) return op(0x11).u2(value); // sipush
+            return op(0x13).u2(pool.integer(value));   // ldc_w
+        }
+
+        // Calls frame.exit(reason, state, steps, lastTransition) and returns its result
+        Code exit(int exitRef, int reason, int state) {
+            local(0x19, FRAME_SLOT).pushInt(reason).pushInt(state);
+            local(0x15, STEPS_SLOT).local(0x15, LAST_SLOT);
+            return invoke(exitRef).op(0xac);   // ireturn
+        }
+
+        // Emits a branch; goto_w takes a 32-bit offset, conditional branches a 16-bit one
+        Code jump(int opcode, Label target) {
+            int position = bytes.size();
+            op(opcode);
+            reference(target, position, opcode == 0xc8 ? 4 : 2);
+            return opcode == 0xc8 ? u4(0) : u2(0);
+        }
+
+        Code tableSwitch(Label fallback, Label[] targets) {
+            int position = bytes.size();
+            op(0xaa);
+            align();
+            reference(fallback, position, 4);
+            u4(0).u4(0).u4(targets.length - 1);
+            for (Label target : targets) {
+                reference(target, position, 4);
+                u4(0);
+            }
+            return this;
+        }
+
+        Code lookupSwitch(Label fallback, ArrayList<Integer> keys, Label[] targets) {
+            int position = bytes.size();
+            op(0xab);
+            align();
+            reference(fallback, position, 4);
+            u4(0).u4(keys.size());
+
+            // Pairs must be sorted by key
+            Integer[] order = new Integer[keys.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(keys.get(a), keys.get(b)));
+            for (int i : order) {
+                u4(keys.get(i));
+                reference(targets[i], position, 4);
+                u4(0);
+            }
+            return this;
+        }
+
+        // Pads with zeros up to the next 4-byte boundary, as switch operands require
+        private void align() {
+            while (bytes.size() % 4 != 0) {
+                bytes.write(0);
+            }
+        }
+
+        private void reference(Label target, int instruction, int width) {
+            patches.add(new int[]{bytes.size(), instruction, width});
+            patchLabels.add(target);
+        }
+
+        void bind(Label label) {
+            label.position = bytes.size();
+        }
+
+        // Returns the finished code with jump offsets filled in, or null if it is too long or a short branch
+        // cannot reach its target
+        byte[] toBytes() {
+            byte[] code = bytes.toByteArray();
+            if (code.length > MAX_CODE_LENGTH) return null;
+            for (int i = 0; i < patches.size(); i++) {
+                int[] patch = patches.get(i);
+                int offset = patchLabels.get(i).position - patch[1];
+                if (patch[2] == 2) {
+                    if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) return null;
+                    code[patch[0]] = (byte) (offset >> 8);
+                    code[patch[0] + 1] = (byte) offset;
+                } else {
+                    code[patch[0]] = (byte) (offset >> 24);
+                    code[patch[0] + 1] = (byte) (offset >> 16);
+                    code[patch[0] + 2] = (byte) (offset >> 8);
+                    code[patch[0] + 3] = (byte) offset;
+                }
+            }
+            return code;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+/**
+ * Head and tape a generated program works on, plus where its last run stopped
+ */
+final class JitFrame {
+
+    private final Tape tape;
+    int index; // Index of the cell under the head
+    int state; // State id the run stopped in
+    int steps; // Steps executed by the run
+    int lastTransition; // Last transition executed by the run, -1 if there was none
+
+    JitFrame(Tape tape, int index) {
+        this.tape = tape;
+        this.index = index;
+    }
+
+    // Called by generated code
+
+    char read() {
+        return tape.getValue(index);
+    }
+
+    void write(char symbol) {
+        tape.write(index, symbol);
+    }
+
+    void left() {
+        // The head stays at index 0 as the tape grows underneath it
+        if (index == 0) {
+            tape.expandOnLeft();
+        } else {
+            index--;
+        }
+    }
+
+    void right() {
+        if (index == tape.getLength() - 1) {
+            tape.expandOnRight();
+        }
+        index++;
+    }
+
+    int exit(int reason, int state, int steps, int lastTransition) {
+        this.state = state;
+        this.steps = steps;
+        this.lastTransition = lastTransition;
+        return reason;
+    }
+}
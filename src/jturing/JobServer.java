@@ -0,0 +1,479 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs jobs for other processes over plain HTTP on the loopback interface, so callers need neither the engine nor
+ * their own compiled programs.
+ *
+ * <p>POST /programs with a program in the text format of ProgramFormat compiles it into the cache and answers with its
+ * content hash. POST /run?state=name runs a job: with program=hash the body is the input tape, otherwise the first
+ * line of the body is the input tape and the rest is the program, which is cached all the same. The input tape must
+ * hold at least one cell. Optional maxSteps, timeout (milliseconds) and mode parameters set the limits and execution
+ * mode, within the server's own step and tape limits. The answer lists the outcome, time, state, position, tape
+ * origin and tape. GET /stats lists the counters.
+ *
+ * <p>Compiled programs are kept in a least-recently-used cache keyed by the SHA-256 of their text. Jobs wait in a
+ * bounded queue, from which each worker takes a batch at a time, and are turned away with 503 when it is full
+ */
+public class JobServer implements Closeable {
+
+    private static final int BATCH_SIZE = 16;
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000; // Longest close() waits for the workers to stop
+    private static final long POLL_MILLIS = 100; // How often an idle worker looks whether the server has closed
+
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final BlockingQueue<Job> queue;
+    private final Thread[] workers;
+    private final LinkedHashMap<String, CompiledProgram> programs;
+    private final long maxStepsLimit;
+    private final int maxTapeLength;
+    private volatile boolean closed;
+
+    // Counters
+    private final long started = System.nanoTime();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder steps = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    // Listens on the given loopback port, or a free one if 0, with a worker per processor, room for 1024 queued jobs
+    // and 256 cached programs, and jobs limited to a billion steps and 16M cells of tape
+    public JobServer(int port) throws IOException {
+        this(port, Runtime.getRuntime().availableProcessors(), 1024, 256, 1_000_000_000L, 1 << 24);
+    }
+
+    // Listens on the given loopback port with the given number of workers, queued jobs and cached programs. No job may
+    // run more than maxStepsLimit steps, whatever it asks for, and a job whose tape grows past maxTapeLength cells
+    // ends with BUDGET_EXHAUSTED at its next check
+    public JobServer(int port, int workerCount, int queueCapacity, int cacheCapacity, long maxStepsLimit,
+                     int maxTapeLength) throws IOException {
+        if (workerCount <= 0 || queueCapacity <= 0 || cacheCapacity <= 0 || maxStepsLimit < 0 || maxTapeLength <= 0) {
+            throw new IllegalArgumentException("Invalid server budget");
+        }
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxStepsLimit = maxStepsLimit;
+        this.maxTapeLength = maxTapeLength;
+        this.programs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledProgram> eldest) {
+                return size() > cacheCapacity;
+            }
+        };
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.handlers = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "job-server-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(handlers);
+        server.createContext("/programs", this::handlePrograms);
+        server.createContext("/run", this::handleRun);
+        server.createContext("/stats", this::handleStats);
+
+        this.workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Thread(this::work, "job-server-worker-" + i);
+            workers[i].setDaemon(true);
+        }
+    }
+
+    // A job waiting for a worker, answered by the worker once it has run
+    private static final class Job {
+        private final HttpExchange exchange;
+        private final CompiledProgram program;
+        private final State initialState;
+        private final char[] input;
+        private final RunOptions options;
+        private final ExecutionMode mode;
+        private final long enqueued = System.nanoTime();
+
+        private Job(HttpExchange exchange, CompiledProgram program, State initialState, char[] input,
+                    RunOptions options, ExecutionMode mode) {
+            this.exchange = exchange;
+            this.program = program;
+            this.initialState = initialState;
+            this.input = input;
+            this.options = options;
+            this.mode = mode;
+        }
+    }
+
+    public void start() {
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        server.start();
+    }
+
+    // Cancels the running jobs, waits a while for the workers to answer them and stop, answers the jobs still queued
+    // with 503 and then stops accepting connections
+    @Override
+    public void close() {
+        // New jobs are turned away from here on, and running ones are cancelled and answered before the server stops.
+        // The workers are not interrupted, as that would close the connection a worker is answering on
+        closed = true;
+        long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MILLIS;
+        for (Thread worker : workers) {
+            try {
+                worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        ArrayList<Job> left = new ArrayList<>();
+        queue.drainTo(left);
+        for (Job job : left) {
+            respond(job.exchange, 503, "Server closed\n");
+        }
+        server.stop(0);
+        handlers.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handlePrograms(HttpExchange exchange) {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                respond(exchange, 405, "Use POST\n");
+                return;
+            }
+            byte[] text = exchange.getRequestBody().readAllBytes();
+            String hash = hash(text);
+            program(hash, text);
+            respond(exchange, 200, hash + "\n");
+        } catch (ProgramFormat.FormatException e) {
+            respond(exchange, 400, e.getMessage() + "\n");
+        } catch (IOException e) {
+            respond(exchange, 500, e.getMessage() + "\n");
+        }
+    }
+
+    private void handleRun(HttpExchange exchange) {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                respond(exchange, 405, "Use POST\n");
+                return;
+            }
+            HashMap<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+            String stateName = parameters.get("state");
+            if (stateName == null) {
+                respond(exchange, 400, "Missing state parameter\n");
+                return;
+            }
+            RunOptions options = new RunOptions();
+            options.setMaxSteps(Math.min(maxStepsLimit, Long.parseLong(parameters.getOrDefault("maxSteps",
+                    Long.toString(Long.MAX_VALUE)))));
+            if (parameters.containsKey("timeout")) {
+                options.setTimeout(Duration.ofMillis(Long.parseLong(parameters.get("timeout"))));
+            }
+            ExecutionMode mode = ExecutionMode.valueOf(parameters.getOrDefault("mode", "STANDARD"));
+
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            CompiledProgram program;
+            String input;
+            if (parameters.containsKey("program")) {
+                synchronized (programs) {
+                    program = programs.get(parameters.get("program"));
+                }
+                if (program == null) {
+                    cacheMisses.increment();
+                    respond(exchange, 404, "Unknown program; POST it to /programs first\n");
+                    return;
+                }
+                cacheHits.increment();
+                input = new String(body, StandardCharsets.UTF_8);
+            } else {
+                int newline = 0;
+                while (newline < body.length && body[newline] != '\n') newline++;
+                input = new String(body, 0, newline, StandardCharsets.UTF_8);
+                byte[] text = new byte[Math.max(0, body.length - newline - 1)];
+                System.arraycopy(body, Math.min(body.length, newline + 1), text, 0, text.length);
+                program = program(hash(text), text);
+            }
+            if (input.endsWith("\r")) input = input.substring(0, input.length() - 1);
+            if (input.isEmpty()) {
+                respond(exchange, 400, "Input tape is empty; give at least one cell\n");
+                return;
+            }
+            if (input.length() > maxTapeLength) {
+                respond(exchange, 413, "Input is longer than the " + maxTapeLength + " cell tape limit\n");
+                return;
+            }
+
+            int stateId = program.stateId(new State(stateName));
+            State state = stateId < 0 ? new State(stateName) : program.getState(stateId);
+            Job job = new Job(exchange, program, state, input.toCharArray(), options, mode);
+            if (closed || !queue.offer(job)) {
+                rejected.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 503, "Job queue is full\n");
+                return;
+            }
+
+            // close() may have drained the queue between the check and the offer. Whoever takes the job out of the
+            // queue answers it, so it is only answered here if it is still there
+            if (closed && queue.remove(job)) {
+                rejected.increment();
+                respond(exchange, 503, "Server closed\n");
+                return;
+            }
+            accepted.increment();
+        } catch (ProgramFormat.FormatException | IllegalArgumentException e) {
+            respond(exchange, 400, e.getMessage() + "\n");
+        } catch (IOException e) {
+            respond(exchange, 500, e.getMessage() + "\n");
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) {
+        StringBuilder text = new StringBuilder();
+        text.append("accepted ").append(getAccepted()).append('\n');
+        text.append("rejected ").append(getRejected()).append('\n');
+        text.append("completed ").append(getCompleted()).append('\n');
+        text.append("failed ").append(getFailed()).append('\n');
+        text.append("queued ").append(queue.size()).append('\n');
+        text.append("batches ").append(batches.sum()).append('\n');
+        text.append("steps ").append(getSteps()).append('\n');
+        text.append("cacheHits ").append(getCacheHits()).append('\n');
+        text.append("cacheMisses ").append(getCacheMisses()).append('\n');
+        text.append("jobsPerSecond ").append(getJobsPerSecond()).append('\n');
+        text.append("stepsPerSecond ").append(getStepsPerSecond()).append('\n');
+        text.append("meanLatencyMicros ").append(getMeanLatency().toNanos() / 1000).append('\n');
+        text.append("maxLatencyMicros ").append(getMaxLatency().toNanos() / 1000).append('\n');
+        respond(exchange, 200, text.toString());
+    }
+
+    // Returns the cached program for the hash of the given text, compiling the text if it is not cached
+    private CompiledProgram program(String hash, byte[] text) throws IOException {
+        synchronized (programs) {
+            CompiledProgram program = programs.get(hash);
+            if (program != null) {
+                cacheHits.increment();
+                return program;
+            }
+        }
+        cacheMisses.increment();
+        Instruction[] instructions = ProgramFormat.parse(new InputStreamReader(new ByteArrayInputStream(text),
+                StandardCharsets.UTF_8));
+        CompiledProgram program = CompiledProgram.compile(instructions);
+        synchronized (programs) {
+            programs.put(hash, program);
+        }
+        return program;
+    }
+
+    // Worker thread: takes up to a batch of jobs at a time, so that short jobs do not each pay for a hand-over
+    private void work() {
+        ArrayList<Job> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            while (!closed) {
+                Job first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                batches.increment();
+                for (Job job : batch) {
+                    run(job);
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    private void run(Job job) {
+        String answer;
+        try {
+            TuringMachine machine = new TuringMachine(job.initialState, new ArrayTape(job.input));
+            machine.setProgram(job.program);
+            machine.setExecutionMode(job.mode);
+
+            // Checked every check interval, in which the tape grows by at most that many cells
+            boolean[] tapeFull = new boolean[1];
+            job.options.setCancellation(() -> {
+                if (machine.getTape().getLength() > maxTapeLength) tapeFull[0] = true;
+                return closed || tapeFull[0];
+            });
+            RunOutcome outcome = machine.run(job.options);
+            if (outcome == RunOutcome.CANCELLED && tapeFull[0]) {
+                outcome = RunOutcome.BUDGET_EXHAUSTED;
+            }
+            steps.add(machine.getTime());
+
+            Tape tape = machine.getTape();
+            StringBuilder text = new StringBuilder();
+            text.append("outcome ").append(outcome).append('\n');
+            text.append("time ").append(machine.getTime()).append('\n');
+            text.append("state ").append(machine.getCurrentState().getName()).append('\n');
+            text.append("position ").append(machine.getCurrentPosition()).append('\n');
+            text.append("origin ").append(tape.getOrigin()).append('\n');
+            text.append("tape ").append(tape.getValues()).append('\n');
+            answer = text.toString();
+        } catch (Throwable e) {
+            // Even an error such as running out of memory only fails this job, and the worker carries on
+            failed.increment();
+            respond(job.exchange, 500, e + "\n");
+            return;
+        }
+        respond(job.exchange, 200, answer);
+        long latency = System.nanoTime() - job.enqueued;
+        latencyNanos.add(latency);
+        maxLatencyNanos.accumulateAndGet(latency, Math::max);
+        completed.increment();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        try (exchange) {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            // The client has gone away; there is nobody left to tell
+        }
+    }
+
+    private static HashMap<String, String> parameters(String query) {
+        HashMap<String, String> parameters = new HashMap<>();
+        if (query == null) return parameters;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals < 0) continue;
+            parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static String hash(byte[] text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text);
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 15, 16)).append(Character.forDigit(b & 15, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // Counters
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    // Jobs turned away because the queue was full
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    // Steps run by all completed jobs together
+    public long getSteps() {
+        return steps.sum();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    public double getJobsPerSecond() {
+        return getCompleted() / ((System.nanoTime() - started) / 1e9);
+    }
+
+    public double getStepsPerSecond() {
+        return getSteps() / ((System.nanoTime() - started) / 1e9);
+    }
+
+    // Mean time from a job being queued to its answer being sent
+    public Duration getMeanLatency() {
+        long count = getCompleted();
+        return Duration.ofNanos(count == 0 ? 0 : latencyNanos.sum() / count);
+    }
+
+    public Duration getMaxLatency() {
+        return Duration.ofNanos(maxLatencyNanos.get());
+    }
+
+    // Runs a server on the port given as the first argument, 8080 by default, until the process is stopped
+    public static void main(String[] args) throws IOException {
+        JobServer server = new JobServer(args.length > 0 ? Integer.parseInt(args[0]) : 8080);
+        server.start();
+        System.out.println("Listening on http://localhost:" + server.getPort());
+    }
+}
@@ -0,0 +1,179 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+/**
+ * Lets other threads watch a running machine. Every so many steps the run publishes an immutable snapshot of its
+ * state, head position, time and a window of cells around the head by swapping a volatile reference, so observers
+ * read a consistent configuration without locks and without ever holding up the run
+ */
+public class LiveView {
+
+    private final int stepInterval;
+    private final int window;
+    private volatile Snapshot snapshot;
+    private long sequence;
+    private long lastTime;
+
+    // Publishes every 65536 steps with 32 cells either side of the head
+    public LiveView() {
+        this(1 << 16, 32);
+    }
+
+    // Publishes every stepInterval steps with window cells either side of the head
+    public LiveView(int stepInterval, int window) {
+        if (stepInterval <= 0) throw new IllegalArgumentException("Step interval must be positive: " + stepInterval);
+        if (window < 0) throw new IllegalArgumentException("Window cannot be negative: " + window);
+        this.stepInterval = stepInterval;
+        this.window = window;
+    }
+
+    // Configuration of a machine at the moment it was published
+    public static final class Snapshot {
+        private final long sequence;
+        private final long publishedNanos;
+        private final long time;
+        private final State state;
+        private final int position;
+        private final boolean halt;
+        private final int tapeLength;
+        private final int origin;
+        private final int windowStart;
+        private final char[] cells;
+
+        private Snapshot(long sequence, TuringMachine machine, int window) {
+            Tape tape = machine.getTape();
+            this.sequence = sequence;
+            this.publishedNanos = System.nanoTime();
+            this.time = machine.getTime();
+            this.state = machine.getCurrentState();
+            this.position = machine.getCurrentPosition();
+            this.halt = machine.isHalt();
+            this.tapeLength = tape.getLength();
+            this.origin = tape.getOrigin();
+
+            int head = position + origin;
+            int from = Math.max(0, Math.min(head, tapeLength) - window);
+            int to = Math.min(tapeLength, Math.max(head, 0) + window + 1);
+            this.windowStart = from - origin;
+            this.cells = new char[Math.max(0, to - from)];
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = tape.getValue(from + i);
+            }
+        }
+
+        // Number of snapshots published before this one by the same view
+        public long getSequence() {
+            return sequence;
+        }
+
+        // System.nanoTime() at which the snapshot was taken
+        public long getPublishedNanos() {
+            return publishedNanos;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public int getPosition() {
+            return position;
+        }
+
+        public boolean isHalt() {
+            return halt;
+        }
+
+        public int getTapeLength() {
+            return tapeLength;
+        }
+
+        public int getOrigin() {
+            return origin;
+        }
+
+        // Position of the first cell in the window, counted like the head position
+        public int getWindowStart() {
+            return windowStart;
+        }
+
+        public int getWindowLength() {
+            return cells.length;
+        }
+
+        // Returns the cell at the given position, which must lie in the window
+        public char getCell(int position) {
+            return cells[position - windowStart];
+        }
+
+        // Returns a copy of the cells in the window
+        public char[] getWindow() {
+            return cells.clone();
+        }
+    }
+
+    // Starts the schedule afresh at the beginning of a run, publishing where the run starts
+    void begin(TuringMachine machine) {
+        publish(machine);
+    }
+
+    // Publishes where the run ended, however it ended
+    void end(TuringMachine machine) {
+        publish(machine);
+    }
+
+    // Number of steps the run may take before a snapshot is due
+    int stepsUntilDue(TuringMachine machine) {
+        return (int) Math.max(1, stepInterval - (machine.getTime() - lastTime));
+    }
+
+    // Called by the run between chunks of steps; publishes if a snapshot is due
+    void poll(TuringMachine machine) {
+        if (machine.getTime() - lastTime >= stepInterval) {
+            publish(machine);
+        }
+    }
+
+    // Publishes the machine as it is now. Must be called from the thread running the machine
+    public void publish(TuringMachine machine) {
+        lastTime = machine.getTime();
+        snapshot = new Snapshot(sequence++, machine, window);
+    }
+
+    // Returns the latest snapshot, or null if none has been published yet. Safe to call from any thread
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public int getStepInterval() {
+        return stepInterval;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+}
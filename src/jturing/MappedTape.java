@@ -0,0 +1,289 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Tape backed by a memory-mapped file holding one ISO-8859-1 byte per cell, so a run can start on an input larger
+ * than the heap without copying it. Cells added on the right extend the file itself, while cells added on the left go
+ * to a temporary side file until flush() writes the whole tape back to the original file in place.
+ *
+ * <p>Like every tape, this one addresses its cells with int indices, so it holds at most Integer.MAX_VALUE cells and
+ * accepts input files of up to 2 GiB less one byte. Larger files are refused rather than truncated; running on them
+ * would take head positions widened to long throughout the engine, not only here
+ */
+public class MappedTape implements Tape, Closeable {
+
+    private static final int CHUNK = 64 << 20; // Mappings grow by at least this many bytes at a time
+    private static final int BLOCK = 1 << 20; // Bytes moved at a time when flushing shifts the file contents
+    private static final byte BLANK_BYTE = (byte) BLANK;
+
+    private final Path file;
+    private final FileChannel channel;
+    private MappedByteBuffer main;
+    private long mainCapacity;
+
+    // Cells left of the file's first cell, stored in reverse so that growing left only ever appends
+    private Path leftFile;
+    private FileChannel leftChannel;
+    private MappedByteBuffer left;
+    private long leftCapacity;
+    private int leftLength;
+
+    // The file holds the remaining cells at [mainStart, mainStart + mainLength)
+    private int mainStart;
+    private int mainLength;
+    private int origin;
+
+    // Maps an existing file as the tape, its bytes being the initial cells
+    public MappedTape(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("File of " + size + " bytes is longer than the largest tape, "
+                    + Integer.MAX_VALUE + " cells");
+        }
+        this.mainLength = (int) size;
+        this.mainCapacity = size;
+        this.main = channel.map(FileChannel.MapMode.READ_WRITE, 0, mainCapacity);
+    }
+
+    // Writes the given cells to a new file, or replaces its contents, and maps it as the tape
+    public static MappedTape create(Path file, char[] values) throws IOException {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = encode(values[i]);
+        }
+        Files.write(file, bytes);
+        return new MappedTape(file);
+    }
+
+    private static byte encode(char val) {
+        if (val > 0xFF) {
+            throw new IllegalArgumentException("Symbol '" + val + "' does not fit in a byte");
+        }
+        return (byte) val;
+    }
+
+    private static char decode(byte b) {
+        return (char) (b & 0xFF);
+    }
+
+    @Override
+    public void write(int index, char val) {
+        Objects.checkIndex(index, getLength());
+        if (index < leftLength) {
+            left.put(leftLength - 1 - index, encode(val));
+        } else {
+            main.put(mainStart + index - leftLength, encode(val));
+        }
+    }
+
+    @Override
+    public char getValue(int index) {
+        Objects.checkIndex(index, getLength());
+        if (index < leftLength) {
+            return decode(left.get(leftLength - 1 - index));
+        }
+        return decode(main.get(mainStart + index - leftLength));
+    }
+
+    @Override
+    public int getLength() {
+        return leftLength + mainLength;
+    }
+
+    @Override
+    public int getOrigin() {
+        return origin;
+    }
+
+    @Override
+    public void expandOnLeft() {
+        if (getLength() == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Tape cannot grow past " + Integer.MAX_VALUE + " cells");
+        }
+
+        // Cells shrunk off the left of the file are reused before the side file is touched
+        if (leftLength == 0 && mainStart > 0) {
+            main.put(--mainStart, BLANK_BYTE);
+            mainLength++;
+        } else {
+            if (leftLength == leftCapacity) {
+                growLeft();
+            }
+            left.put(leftLength++, BLANK_BYTE);
+        }
+        origin++;
+    }
+
+    @Override
+    public void expandOnRight() {
+        if (getLength() == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Tape cannot grow past " + Integer.MAX_VALUE + " cells");
+        }
+        if (mainStart + mainLength == mainCapacity) {
+            main = map(channel, mainCapacity + 1);
+            mainCapacity = main.capacity();
+        }
+
+        // Bytes the file was extended with are zero, so new cells are set blank explicitly
+        main.put(mainStart + mainLength++, BLANK_BYTE);
+    }
+
+    @Override
+    public void shrinkOnLeft() {
+        if (leftLength > 0) {
+            leftLength--;
+        } else {
+            mainStart++;
+            mainLength--;
+        }
+        origin--;
+    }
+
+    @Override
+    public void shrinkOnRight() {
+        if (mainLength > 0) {
+            mainLength--;
+            return;
+        }
+
+        // The file holds no cells, so the rightmost cell is the oldest one in the side file
+        for (int i = 1; i < leftLength; i++) {
+            left.put(i - 1, left.get(i));
+        }
+        leftLength--;
+    }
+
+    private void growLeft() {
+        try {
+            if (leftChannel == null) {
+                leftFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName() + ".", ".left");
+                leftChannel = FileChannel.open(leftFile, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        left = map(leftChannel, leftCapacity + 1);
+        leftCapacity = left.capacity();
+    }
+
+    // Maps at least the given number of bytes of the channel, growing by whole chunks and extending the file if needed
+    private static MappedByteBuffer map(FileChannel channel, long needed) {
+        long capacity = Math.min(Integer.MAX_VALUE, Math.max(needed, (needed + CHUNK - 1) / CHUNK * CHUNK));
+        try {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Writes the tape back to the file so that it holds exactly the current cells, leftmost first
+    public void flush() throws IOException {
+        int length = getLength();
+        if (leftLength > 0 || mainStart > 0) {
+            if (length > mainCapacity) {
+                main = map(channel, length);
+                mainCapacity = main.capacity();
+            }
+            move(mainStart, leftLength, mainLength);
+            for (int i = 0; i < leftLength; i++) {
+                main.put(i, left.get(leftLength - 1 - i));
+            }
+            mainStart = 0;
+            mainLength = length;
+            leftLength = 0;
+        }
+        main.force();
+
+        // Truncating a mapped region is refused on some platforms, so the file keeps any spare capacity until close
+        try {
+            channel.truncate(mainLength);
+            mainCapacity = Math.min(mainCapacity, mainLength);
+        } catch (IOException e) {
+            // The spare bytes remain at the end of the file
+        }
+    }
+
+    // Moves count bytes of the file from one offset to another, copying blockwise from the end furthest along
+    private void move(int from, int to, int count) {
+        byte[] block = new byte[Math.min(BLOCK, Math.max(count, 1))];
+        ByteBuffer source = main.duplicate();
+        ByteBuffer target = main.duplicate();
+        for (int done = 0; done < count; ) {
+            int size = Math.min(block.length, count - done);
+            int offset = to > from ? count - done - size : done;
+            source.position(from + offset);
+            source.get(block, 0, size);
+            target.position(to + offset);
+            target.put(block, 0, size);
+            done += size;
+        }
+    }
+
+    // Flushes the tape to its file and releases both files; the side file is deleted
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+            if (leftChannel != null) {
+                leftChannel.close();
+            }
+        }
+    }
+
+    @Override
+    public char[] getValues() {
+        char[] values = new char[getLength()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getValue(i);
+        }
+        return values;
+    }
+
+    // Copies the cells into an in-heap tape, as a second mapping of the same file would not be independent
+    @Override
+    public Tape copy() {
+        return new ArrayTape(getValues(), origin);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+}
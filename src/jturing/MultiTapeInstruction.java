@@ -0,0 +1,118 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+/**
+ * Instruction of a k-tape machine: in the old state, reading one symbol under each head, it writes one symbol under
+ * each head, moves each head in its own direction and enters the new state
+ */
+public class MultiTapeInstruction {
+    private State oldState; // The state that was previously read
+    private char[] givenSymbols; // The symbols that were read, one per tape
+    private State newState; // The state to move in to
+    private char[] writeSymbols; // The symbols to write, one per tape
+    private HeadDirection[] directions; // The direction for each head to travel in
+    private boolean halt; // Whether or not the instruction causes the machine to halt
+
+    public MultiTapeInstruction(State oldState, char[] givenSymbols, State newState, char[] writeSymbols,
+                                HeadDirection[] directions, boolean halt) {
+        if (givenSymbols.length != writeSymbols.length || givenSymbols.length != directions.length) {
+            throw new IllegalArgumentException("Symbols read, symbols written and directions must match in number");
+        }
+        this.oldState = oldState;
+        this.givenSymbols = givenSymbols;
+        this.newState = newState;
+        this.writeSymbols = writeSymbols;
+        this.directions = directions;
+        this.halt = halt;
+    }
+
+    // Shorthand taking one string per tuple, such as "1-" for the symbols and "RC" for the directions
+    public MultiTapeInstruction(State oldState, String givenSymbols, State newState, String writeSymbols,
+                                String directions, boolean halt) {
+        this(oldState, givenSymbols.toCharArray(), newState, writeSymbols.toCharArray(), directions(directions), halt);
+    }
+
+    private static HeadDirection[] directions(String directions) {
+        HeadDirection[] result = new HeadDirection[directions.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = HeadDirection.valueOf(String.valueOf(directions.charAt(i)));
+        }
+        return result;
+    }
+
+    // Number of tapes the instruction reads and writes
+    public int getTapeCount() {
+        return givenSymbols.length;
+    }
+
+    // Getters and setters
+
+    public boolean isHalt() {
+        return halt;
+    }
+
+    public void setHalt(boolean halt) {
+        this.halt = halt;
+    }
+
+    public State getOldState() {
+        return oldState;
+    }
+
+    public void setOldState(State oldState) {
+        this.oldState = oldState;
+    }
+
+    public char[] getGivenSymbols() {
+        return givenSymbols;
+    }
+
+    public void setGivenSymbols(char[] givenSymbols) {
+        this.givenSymbols = givenSymbols;
+    }
+
+    public State getNewState() {
+        return newState;
+    }
+
+    public void setNewState(State newState) {
+        this.newState = newState;
+    }
+
+    public char[] getWriteSymbols() {
+        return writeSymbols;
+    }
+
+    public void setWriteSymbols(char[] writeSymbols) {
+        this.writeSymbols = writeSymbols;
+    }
+
+    public HeadDirection[] getDirections() {
+        return directions;
+    }
+
+    public void setDirections(HeadDirection[] directions) {
+        this.directions = directions;
+    }
+}
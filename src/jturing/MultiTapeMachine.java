@@ -0,0 +1,229 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+/**
+ * Turing machine with k tapes and one head per tape. Each step reads the symbols under all heads at once, so
+ * algorithms that need to shuttle one head back and forth across a single tape run in linear time
+ */
+public class MultiTapeMachine {
+
+    private State currentState;
+    private final Tape[] tapes;
+    private final int[] positions; // Relative to each tape's original first cell, like TuringMachine.getCurrentPosition
+    private long time;
+    private MultiTapeInstruction[] instructions;
+    private MultiTapeProgram program;
+    private boolean missingTransition; // Whether the machine halted because no instruction matched
+    private boolean halt;
+    private MultiTapeInstruction currentInstruction;
+
+    // Constructors
+
+    public MultiTapeMachine(State currentState, MultiTapeInstruction[] instructions, Tape... tapes) {
+        if (tapes.length == 0) throw new IllegalArgumentException("A machine needs at least one tape");
+        this.currentState = currentState;
+        this.instructions = instructions;
+        this.tapes = tapes.clone();
+        this.positions = new int[tapes.length];
+        this.time = 0;
+        this.halt = false;
+    }
+
+    public MultiTapeMachine(State currentState, Tape... tapes) {
+        this(currentState, new MultiTapeInstruction[0], tapes);
+    }
+
+    // Compiles the instruction set into a transition lookup, reusing the last compilation until the instructions are
+    // replaced
+    public MultiTapeProgram compile() {
+        if (program == null) {
+            program = MultiTapeProgram.compile(instructions, tapes.length);
+        }
+        return program;
+    }
+
+    // Executes a single step, halting if no instruction matches the symbols under the heads
+    public void step() {
+        MultiTapeProgram program = compile();
+        int[] indices = indices();
+        step(program, program.stateId(currentState), indices);
+    }
+
+    // Loops through the tapes executing the appropriate instructions until the machine halts
+    public RunOutcome run() {
+        return run(new RunOptions());
+    }
+
+    // Runs until the machine halts or hits a missing transition, or the options end the run early. Budgets, deadline
+    // and cancellation are checked every check interval as for a single tape; cycle detection is not supported
+    public RunOutcome run(RunOptions options) {
+        if (options.isCycleDetection()) {
+            throw new IllegalArgumentException("Cycle detection is not supported on multiple tapes");
+        }
+        MultiTapeProgram program = compile();
+        if (!halt) {
+            missingTransition = false;
+        }
+
+        long deadline = options.getTimeout() == null ? 0 : System.nanoTime() + options.getTimeout().toNanos();
+        int[] indices = indices();
+        int state = program.stateId(currentState);
+        long remaining = options.getMaxSteps();
+        while (!halt) {
+            if (remaining == 0) return RunOutcome.BUDGET_EXHAUSTED;
+
+            long end = time + Math.min(remaining, options.getCheckInterval());
+            long start = time;
+            while (!halt && time != end) {
+                state = step(program, state, indices);
+            }
+            remaining -= time - start;
+
+            if (halt) break;
+            if (options.getCancellation() != null && options.getCancellation().getAsBoolean()) {
+                return RunOutcome.CANCELLED;
+            }
+            if (deadline != 0 && System.nanoTime() - deadline >= 0) {
+                return RunOutcome.BUDGET_EXHAUSTED;
+            }
+        }
+        return missingTransition ? RunOutcome.MISSING_TRANSITION : RunOutcome.HALTED;
+    }
+
+    private int[] indices() {
+        int[] indices = new int[tapes.length];
+        for (int tape = 0; tape < tapes.length; tape++) {
+            indices[tape] = positions[tape] + tapes[tape].getOrigin();
+        }
+        return indices;
+    }
+
+    // Executes one step from the given state id with the heads at the given tape indices, which it keeps up to
+    // date, and returns the next state id
+    private int step(MultiTapeProgram program, int state, int[] indices) {
+        int transition = program.transition(state, tapes, indices);
+        if (transition < 0) {
+            halt = true;
+            missingTransition = true;
+            return state;
+        }
+
+        for (int tape = 0; tape < tapes.length; tape++) {
+            Tape current = tapes[tape];
+            current.write(indices[tape], program.getWriteSymbol(transition, tape));
+            int move = program.getMove(transition, tape);
+            if (move < 0) {
+                if (indices[tape] == 0) {
+                    current.expandOnLeft();
+                } else {
+                    indices[tape]--;
+                }
+            } else if (move > 0) {
+                if (indices[tape] == current.getLength() - 1) {
+                    current.expandOnRight();
+                }
+                indices[tape]++;
+            }
+            positions[tape] += move;
+        }
+
+        int next = program.getNextState(transition);
+        currentState = program.getInstruction(transition).getNewState();
+        currentInstruction = program.getInstruction(transition);
+        halt = program.isHalt(transition);
+        time++;
+        return next;
+    }
+
+    // Prints every tape with its head marked, as printTape does for a single tape
+    public void printTapes() {
+        StringBuilder frame = new StringBuilder();
+        for (int tape = 0; tape < tapes.length; tape++) {
+            frame.append("\n|");
+            for (int i = 0; i < tapes[tape].getLength(); i++) {
+                frame.append(tapes[tape].getValue(i)).append('|');
+            }
+            frame.append('\n');
+            for (int i = 0; i < (positions[tape] + tapes[tape].getOrigin()) * 2 + 1; i++) {
+                frame.append(' ');
+            }
+            frame.append('^');
+        }
+        frame.append("\ncurrentState = ").append(currentState.getName()).append('\n');
+        frame.append("time = ").append(time).append('\n');
+        frame.append("=============================================");
+        System.out.print(frame);
+    }
+
+    // Getters and setters
+
+    public MultiTapeInstruction[] getInstructions() {
+        return instructions;
+    }
+
+    public void setInstructions(MultiTapeInstruction[] instructions) {
+        this.instructions = instructions;
+        this.program = null;
+    }
+
+    public int getTapeCount() {
+        return tapes.length;
+    }
+
+    public Tape getTape(int tape) {
+        return tapes[tape];
+    }
+
+    public int getPosition(int tape) {
+        return positions[tape];
+    }
+
+    public void setPosition(int tape, int position) {
+        positions[tape] = position;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public State getCurrentState() {
+        return currentState;
+    }
+
+    public void setCurrentState(State currentState) {
+        this.currentState = currentState;
+    }
+
+    public MultiTapeInstruction getCurrentInstruction() {
+        return currentInstruction;
+    }
+
+    public boolean isHalt() {
+        return halt;
+    }
+
+    public void setHalt(boolean halt) {
+        this.halt = halt;
+    }
+}
@@ -0,0 +1,203 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Compiled transition lookup of a k-tape machine. States and the symbols of every tape are interned to small ids, and
+ * the tuple of symbols under the heads is combined into one mixed-radix key, which indexes a dense table or, when
+ * that table would be too large, a hash map
+ */
+public class MultiTapeProgram {
+
+    private static final int MAX_DENSE_TABLE = 1 << 22;
+
+    private final int tapeCount;
+    private final State[] states;
+    private final HashMap<String, Integer> stateIds;
+    private final int[][] symbolIds; // Per tape, symbol id for every char up to the highest symbol, -1 if unknown
+    private final int[] radices; // Per tape, the number of symbols it reads
+    private final int[] table; // Transition for [state, key], -1 if none; null when the sparse map is used instead
+    private final HashMap<Long, Integer> sparse;
+    private final long keysPerState;
+
+    // Per-transition columns; the tuple columns hold tapeCount entries per transition
+    private final MultiTapeInstruction[] instructions;
+    private final int[] nextStates;
+    private final char[] writeSymbols;
+    private final int[] moves;
+    private final boolean[] halts;
+
+    private MultiTapeProgram(MultiTapeInstruction[] instructions, int tapeCount) {
+        this.tapeCount = tapeCount;
+        this.instructions = instructions.clone();
+        this.stateIds = new HashMap<>();
+
+        // Intern every state, and every symbol each tape is read for
+        ArrayList<State> interned = new ArrayList<>();
+        ArrayList<HashMap<Character, Integer>> symbols = new ArrayList<>();
+        for (int tape = 0; tape < tapeCount; tape++) {
+            symbols.add(new HashMap<>());
+        }
+        for (MultiTapeInstruction instruction : instructions) {
+            if (instruction.getTapeCount() != tapeCount) {
+                throw new IllegalArgumentException("Instruction for " + instruction.getTapeCount()
+                        + " tapes in a program for " + tapeCount);
+            }
+            intern(instruction.getOldState(), interned);
+            intern(instruction.getNewState(), interned);
+            for (int tape = 0; tape < tapeCount; tape++) {
+                symbols.get(tape).putIfAbsent(instruction.getGivenSymbols()[tape], symbols.get(tape).size());
+            }
+        }
+        this.states = interned.toArray(new State[0]);
+
+        this.symbolIds = new int[tapeCount][];
+        this.radices = new int[tapeCount];
+        long keys = 1;
+        for (int tape = 0; tape < tapeCount; tape++) {
+            HashMap<Character, Integer> ids = symbols.get(tape);
+            char max = 0;
+            for (char symbol : ids.keySet()) {
+                if (symbol > max) max = symbol;
+            }
+            int[] tapeIds = new int[ids.isEmpty() ? 0 : max + 1];
+            Arrays.fill(tapeIds, -1);
+            ids.forEach((symbol, id) -> tapeIds[symbol] = id);
+            symbolIds[tape] = tapeIds;
+            radices[tape] = ids.size();
+            keys *= Math.max(1, ids.size());
+            if (keys > Long.MAX_VALUE / Math.max(1, states.length) / Character.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many combinations of symbols to index");
+            }
+        }
+        this.keysPerState = keys;
+
+        // Build the transition columns and the lookup, later instructions overriding earlier ones
+        int count = instructions.length;
+        this.nextStates = new int[count];
+        this.writeSymbols = new char[count * tapeCount];
+        this.moves = new int[count * tapeCount];
+        this.halts = new boolean[count];
+        long size = keysPerState * states.length;
+        this.table = size <= MAX_DENSE_TABLE ? new int[(int) size] : null;
+        this.sparse = table == null ? new HashMap<>() : null;
+        if (table != null) Arrays.fill(table, -1);
+
+        for (int i = 0; i < count; i++) {
+            MultiTapeInstruction instruction = instructions[i];
+            nextStates[i] = stateIds.get(instruction.getNewState().getName());
+            halts[i] = instruction.isHalt();
+            long key = 0;
+            for (int tape = 0; tape < tapeCount; tape++) {
+                writeSymbols[i * tapeCount + tape] = instruction.getWriteSymbols()[tape];
+                HeadDirection direction = instruction.getDirections()[tape];
+                moves[i * tapeCount + tape] = direction == HeadDirection.L ? -1 : direction == HeadDirection.R ? 1 : 0;
+                key = key * radices[tape] + symbolIds[tape][instruction.getGivenSymbols()[tape]];
+            }
+            key += stateIds.get(instruction.getOldState().getName()) * keysPerState;
+            if (table != null) {
+                table[(int) key] = i;
+            } else {
+                sparse.put(key, i);
+            }
+        }
+    }
+
+    private void intern(State state, ArrayList<State> interned) {
+        if (!stateIds.containsKey(state.getName())) {
+            stateIds.put(state.getName(), interned.size());
+            interned.add(state);
+        }
+    }
+
+    // Compiles a snapshot of the given instructions, every one of which must be for the given number of tapes
+    public static MultiTapeProgram compile(MultiTapeInstruction[] instructions, int tapeCount) {
+        return new MultiTapeProgram(instructions, tapeCount);
+    }
+
+    // Returns the id of the given state, or -1 if the program never mentions it
+    public int stateId(State state) {
+        Integer id = stateIds.get(state.getName());
+        return id == null ? -1 : id;
+    }
+
+    // Returns the transition for a state id and the cells under the heads, at the given indices of the given tapes,
+    // or -1 if there is none
+    public int transition(int state, Tape[] tapes, int[] indices) {
+        if (state < 0) return -1;
+        long key = 0;
+        for (int tape = 0; tape < tapeCount; tape++) {
+            char symbol = tapes[tape].getValue(indices[tape]);
+            int[] ids = symbolIds[tape];
+            int id = symbol < ids.length ? ids[symbol] : -1;
+            if (id < 0) return -1;
+            key = key * radices[tape] + id;
+        }
+        key += state * keysPerState;
+        if (table != null) return table[(int) key];
+        Integer transition = sparse.get(key);
+        return transition == null ? -1 : transition;
+    }
+
+    // Getters
+
+    public int getTapeCount() {
+        return tapeCount;
+    }
+
+    public int getStateCount() {
+        return states.length;
+    }
+
+    public State getState(int state) {
+        return states[state];
+    }
+
+    public int getTransitionCount() {
+        return instructions.length;
+    }
+
+    public MultiTapeInstruction getInstruction(int transition) {
+        return instructions[transition];
+    }
+
+    public int getNextState(int transition) {
+        return nextStates[transition];
+    }
+
+    public char getWriteSymbol(int transition, int tape) {
+        return writeSymbols[transition * tapeCount + tape];
+    }
+
+    public int getMove(int transition, int tape) {
+        return moves[transition * tapeCount + tape];
+    }
+
+    public boolean isHalt(int transition) {
+        return halts[transition];
+    }
+}
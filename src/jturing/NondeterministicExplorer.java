@@ -0,0 +1,432 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a program as a nondeterministic machine, where every quintuple for a state and symbol is a branch rather than
+ * the last one overriding the others. Branches are explored breadth-first, one level per step, with each level split
+ * across worker threads. Configurations are deduplicated by a 64-bit fingerprint of the state, the head and the tape
+ * trimmed of blanks, so a configuration reached twice is expanded once, and exploration stops as soon as any branch
+ * executes a halting instruction.
+ *
+ * <p>The frontier of a level is capped. Under FrontierPolicy.STOP a level that would exceed the cap ends the
+ * exploration with BUDGET_EXHAUSTED; under FrontierPolicy.TRUNCATE the excess configurations are dropped and the
+ * exploration goes on, but can then no longer prove that no branch halts. The set of fingerprints grows by one entry
+ * per configuration explored, so the step budget bounds it too. Two distinct configurations sharing a fingerprint
+ * would wrongly be merged; with 64 bits this is vanishingly unlikely below billions of configurations
+ */
+public class NondeterministicExplorer {
+
+    private static final int MIN_CHUNK = 64; // Configurations per task, so small levels are not dominated by scheduling
+
+    // What happens when a level would hold more configurations than the frontier cap
+    public enum FrontierPolicy {
+        STOP, TRUNCATE
+    }
+
+    private final CompiledProgram program;
+    private final int[][] branches; // Every transition for [state * symbolCount + symbol], in program order
+    private final Executor executor;
+    private int maxFrontier = 1 << 20;
+    private FrontierPolicy frontierPolicy = FrontierPolicy.STOP;
+
+    // Explores on the common fork-join pool, with the calling thread taking part
+    public NondeterministicExplorer(CompiledProgram program) {
+        this(program, ForkJoinPool.commonPool());
+    }
+
+    public NondeterministicExplorer(CompiledProgram program, Executor executor) {
+        this.program = program;
+        this.executor = executor;
+
+        int symbolCount = program.getSymbolCount();
+        int[] counts = new int[program.getStateCount() * symbolCount];
+        for (int t = 0; t < program.getTransitionCount(); t++) {
+            counts[key(t)]++;
+        }
+        this.branches = new int[counts.length][];
+        for (int key = 0; key < counts.length; key++) {
+            branches[key] = new int[counts[key]];
+            counts[key] = 0;
+        }
+        for (int t = 0; t < program.getTransitionCount(); t++) {
+            int key = key(t);
+            branches[key][counts[key]++] = t;
+        }
+    }
+
+    private int key(int transition) {
+        return program.getOldState(transition) * program.getSymbolCount()
+                + program.symbolId(program.getGivenSymbol(transition));
+    }
+
+    // One configuration of one branch: the tape trimmed of blanks on both sides, placed at an absolute position
+    private static final class Configuration {
+        final int state;
+        final int head; // Relative to the original first cell
+        final int origin; // Position of the first trimmed cell, relative to the original first cell
+        final char[] cells;
+        final long fingerprint;
+
+        Configuration(int state, int head, int origin, char[] cells) {
+            this.state = state;
+            this.head = head;
+            this.origin = origin;
+            this.cells = cells;
+            this.fingerprint = fingerprint();
+        }
+
+        char read() {
+            int index = head - origin;
+            return index >= 0 && index < cells.length ? cells[index] : Tape.BLANK;
+        }
+
+        // Fingerprint that ignores where on the tape the configuration lies, as that cannot change its behaviour
+        private long fingerprint() {
+            long hash = (0xcbf29ce484222325L ^ state) * 0x100000001b3L;
+            hash = (hash ^ (head - origin)) * 0x100000001b3L;
+            for (char cell : cells) {
+                hash = (hash ^ cell) * 0x100000001b3L;
+            }
+            hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+            hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+            return hash ^ (hash >>> 31);
+        }
+    }
+
+    // How an exploration ended. A HALTED result carries the configuration the first halting branch ended in
+    public static class Result {
+        private final RunOutcome outcome;
+        private final long steps;
+        private final long explored;
+        private final boolean complete;
+        private final int frontierSize;
+        private final Configuration halted;
+        private final int transition;
+
+        private Result(RunOutcome outcome, long steps, long explored, boolean complete, int frontierSize,
+                       Configuration halted, int transition) {
+            this.outcome = outcome;
+            this.steps = steps;
+            this.explored = explored;
+            this.complete = complete;
+            this.frontierSize = frontierSize;
+            this.halted = halted;
+            this.transition = transition;
+        }
+
+        // HALTED if a branch executed a halting instruction. When every branch was followed to its end without that,
+        // MISSING_TRANSITION if some branch reached a missing transition and CYCLE_DETECTED if all of them repeated
+        // configurations. BUDGET_EXHAUSTED when the steps, the time or the frontier ran out first
+        public RunOutcome getOutcome() {
+            return outcome;
+        }
+
+        // Number of levels explored, which for a halted result is the length of the halting branch
+        public long getSteps() {
+            return steps;
+        }
+
+        // Number of distinct configurations expanded
+        public long getExplored() {
+            return explored;
+        }
+
+        // Whether no configuration was dropped by FrontierPolicy.TRUNCATE
+        public boolean isComplete() {
+            return complete;
+        }
+
+        // Size of the last frontier, before the cap stopped it if it did
+        public int getFrontierSize() {
+            return frontierSize;
+        }
+
+        // State id the halting branch ended in, or -1
+        public int getState() {
+            return halted == null ? -1 : halted.state;
+        }
+
+        // Halting transition, or -1
+        public int getTransition() {
+            return transition;
+        }
+
+        // Head position of the halting branch relative to the original first cell
+        public int getPosition() {
+            return halted == null ? 0 : halted.head;
+        }
+
+        // Position of the first non-blank cell of the halting branch's tape relative to the original first cell
+        public int getTapeOrigin() {
+            return halted == null ? 0 : halted.origin;
+        }
+
+        // Non-blank stretch of the halting branch's tape, or null
+        public char[] getTape() {
+            return halted == null ? null : halted.cells.clone();
+        }
+    }
+
+    // Explores from the given state with the head at the given position of the tape, which is left unchanged.
+    // The options' step budget limits the depth, and the deadline and cancellation are checked between levels
+    public Result explore(State initialState, Tape tape, int position, RunOptions options)
+            throws InterruptedException {
+        long deadline = options.getTimeout() == null ? 0 : System.nanoTime() + options.getTimeout().toNanos();
+        int origin = tape.getOrigin();
+        Configuration start = trim(program.stateId(initialState), position, -origin, tape.getValues());
+
+        Set<Long> visited = new HashSet<>();
+        visited.add(start.fingerprint);
+        List<Configuration> frontier = new ArrayList<>();
+        frontier.add(start);
+        long explored = 0;
+        boolean complete = true;
+        boolean deadEnd = false;
+
+        for (long depth = 0; ; depth++) {
+            if (frontier.isEmpty()) {
+                RunOutcome outcome = !complete ? RunOutcome.BUDGET_EXHAUSTED
+                        : deadEnd ? RunOutcome.MISSING_TRANSITION : RunOutcome.CYCLE_DETECTED;
+                return new Result(outcome, depth, explored, complete, 0, null, -1);
+            }
+            if (depth == options.getMaxSteps() || deadline != 0 && System.nanoTime() - deadline >= 0) {
+                return new Result(RunOutcome.BUDGET_EXHAUSTED, depth, explored, complete, frontier.size(), null, -1);
+            }
+            if (options.getCancellation() != null && options.getCancellation().getAsBoolean()) {
+                return new Result(RunOutcome.CANCELLED, depth, explored, complete, frontier.size(), null, -1);
+            }
+
+            Level level = new Level(frontier, visited);
+            level.expand();
+            explored += frontier.size();
+            deadEnd |= level.deadEnd;
+            complete &= !level.truncated;
+
+            Halt halt = level.halt;
+            if (halt != null) {
+                return new Result(RunOutcome.HALTED, depth + 1, explored, complete, frontier.size(),
+                        halt.configuration, halt.transition);
+            }
+            if (level.overflow) {
+                return new Result(RunOutcome.BUDGET_EXHAUSTED, depth, explored, complete, maxFrontier + 1, null, -1);
+            }
+            frontier = level.next();
+        }
+    }
+
+    private static final class Halt {
+        final Configuration configuration;
+        final int transition;
+
+        Halt(Configuration configuration, int transition) {
+            this.configuration = configuration;
+            this.transition = transition;
+        }
+    }
+
+    // What one chunk of a level produced: the successors not yet visited, in frontier order, and the first halting
+    // branch in the chunk if there is one
+    private static final class Chunk {
+        final List<Configuration> successors = new ArrayList<>();
+        Halt halt;
+        boolean deadEnd;
+    }
+
+    // Expansion of one frontier into the next. Chunks of the frontier are expanded in parallel against a visited set
+    // that nobody writes to meanwhile, then merged in frontier order, so the next frontier, the halting branch
+    // picked and the effect of the frontier cap are the same on every run
+    private final class Level {
+        private final List<Configuration> frontier;
+        private final Set<Long> visited;
+        private final int chunkSize;
+        private final Chunk[] chunks;
+        private final AtomicInteger nextChunk = new AtomicInteger();
+        private final AtomicInteger firstHalt = new AtomicInteger(Integer.MAX_VALUE); // Lowest chunk seen halting
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final List<Configuration> next = new ArrayList<>();
+        private Halt halt;
+        private boolean overflow;
+        private boolean truncated;
+        private boolean deadEnd;
+
+        Level(List<Configuration> frontier, Set<Long> visited) {
+            this.frontier = frontier;
+            this.visited = visited;
+            int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors());
+            this.chunkSize = Math.max(MIN_CHUNK, (frontier.size() + parallelism * 4 - 1) / (parallelism * 4));
+            this.chunks = new Chunk[(frontier.size() + chunkSize - 1) / chunkSize];
+        }
+
+        // Helpers on the executor and the calling thread all claim chunks until none are left, so the calling thread
+        // only ever waits for chunks another thread is already working on. Helpers that start late find nothing to
+        // do, which keeps a shared or saturated pool from deadlocking on itself
+        void expand() throws InterruptedException {
+            CountDownLatch done = new CountDownLatch(chunks.length);
+            int helpers = Math.min(chunks.length - 1, Runtime.getRuntime().availableProcessors() - 1);
+            for (int i = 0; i < helpers; i++) {
+                executor.execute(() -> claim(done));
+            }
+            claim(done);
+            done.await();
+            if (failure.get() != null) {
+                throw new IllegalStateException("Exploration failed", failure.get());
+            }
+            merge();
+        }
+
+        private void claim(CountDownLatch done) {
+            for (int index = nextChunk.getAndIncrement(); index < chunks.length; index = nextChunk.getAndIncrement()) {
+                try {
+                    chunks[index] = expand(index);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        }
+
+        private Chunk expand(int index) {
+            Chunk chunk = new Chunk();
+            int symbolCount = program.getSymbolCount();
+            int to = Math.min(frontier.size(), (index + 1) * chunkSize);
+            for (int i = index * chunkSize; i < to; i++) {
+                // A lower chunk has halted, so nothing this chunk finds can matter
+                if (firstHalt.get() < index) break;
+                Configuration configuration = frontier.get(i);
+                int symbol = program.symbolId(configuration.read());
+                int[] choices = symbol < 0 ? null : branches[configuration.state * symbolCount + symbol];
+                if (choices == null || choices.length == 0) {
+                    chunk.deadEnd = true;
+                    continue;
+                }
+
+                for (int transition : choices) {
+                    Configuration successor = apply(configuration, transition);
+                    if (program.isHalt(transition)) {
+                        chunk.halt = new Halt(successor, transition);
+                        firstHalt.accumulateAndGet(index, Math::min);
+                        return chunk;
+                    }
+                    if (!visited.contains(successor.fingerprint)) {
+                        chunk.successors.add(successor);
+                    }
+                }
+            }
+            return chunk;
+        }
+
+        // Takes the first halting branch in frontier order, or else builds the next frontier in frontier order
+        private void merge() {
+            for (Chunk chunk : chunks) {
+                if (chunk.halt != null) {
+                    halt = chunk.halt;
+                    return;
+                }
+            }
+            for (Chunk chunk : chunks) {
+                deadEnd |= chunk.deadEnd;
+                for (Configuration successor : chunk.successors) {
+                    if (!visited.add(successor.fingerprint)) continue;
+                    if (next.size() == maxFrontier) {
+                        if (frontierPolicy == FrontierPolicy.STOP) {
+                            overflow = true;
+                            return;
+                        }
+
+                        // Forget the dropped configuration, so it can still be explored if reached again later
+                        visited.remove(successor.fingerprint);
+                        truncated = true;
+                        continue;
+                    }
+                    next.add(successor);
+                }
+            }
+        }
+
+        List<Configuration> next() {
+            return next;
+        }
+    }
+
+    // Writes, moves and changes state as the transition says, giving a new configuration
+    private Configuration apply(Configuration configuration, int transition) {
+        char symbol = program.getWriteSymbol(transition);
+        int head = configuration.head;
+        char[] cells = configuration.cells;
+        int origin = configuration.origin;
+        if (symbol != configuration.read()) {
+            int from = symbol == Tape.BLANK ? origin : Math.min(origin, head);
+            int to = symbol == Tape.BLANK ? origin + cells.length : Math.max(origin + cells.length, head + 1);
+            char[] written = new char[to - from];
+            Arrays.fill(written, Tape.BLANK);
+            System.arraycopy(cells, 0, written, origin - from, cells.length);
+            written[head - from] = symbol;
+            return trim(program.getNextState(transition), head + program.getMove(transition), from, written);
+        }
+        head += program.getMove(transition);
+        return new Configuration(program.getNextState(transition), head, cells.length == 0 ? head : origin, cells);
+    }
+
+    private static Configuration trim(int state, int head, int origin, char[] cells) {
+        int from = 0;
+        int to = cells.length;
+        while (from < to && cells[from] == Tape.BLANK) from++;
+        while (to > from && cells[to - 1] == Tape.BLANK) to--;
+
+        // A blank tape looks the same wherever the head is
+        if (from == to) return new Configuration(state, head, head, new char[0]);
+        if (from == 0 && to == cells.length) return new Configuration(state, head, origin, cells);
+        return new Configuration(state, head, origin + from, Arrays.copyOfRange(cells, from, to));
+    }
+
+    public int getMaxFrontier() {
+        return maxFrontier;
+    }
+
+    // Largest number of configurations a level may hold
+    public void setMaxFrontier(int maxFrontier) {
+        if (maxFrontier <= 0) throw new IllegalArgumentException("Frontier cap must be positive: " + maxFrontier);
+        this.maxFrontier = maxFrontier;
+    }
+
+    public FrontierPolicy getFrontierPolicy() {
+        return frontierPolicy;
+    }
+
+    public void setFrontierPolicy(FrontierPolicy frontierPolicy) {
+        this.frontierPolicy = frontierPolicy;
+    }
+}
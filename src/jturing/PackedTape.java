@@ -0,0 +1,236 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Contiguous tape for small alphabets, packing each cell into 1 to 4 bits of a long array. Cells are laid out as one
+ * continuous bit stream so that 3-bit cells waste nothing, and a cell that straddles two words is read and written
+ * without branching
+ */
+public class PackedTape implements Tape {
+
+    private static final int MIN_CAPACITY = 64;
+    private static final int MAX_BITS = 4;
+
+    private final char[] alphabet; // Symbol for every code, the blank always being code 0
+    private final int[] codes; // Code for every char up to the highest symbol, -1 if not in the alphabet
+    private final int bits;
+    private final long mask;
+
+    // Same geometry as ArrayTape, counted in cells: blank slack on both sides of the logical contents
+    private long[] words;
+    private int capacity;
+    private int start;
+    private int length;
+    private int origin;
+
+    public PackedTape(char[] values, char[] alphabet) {
+        this(values, 0, alphabet);
+    }
+
+    // Creates a tape that can hold the given alphabet, plus the blank and any symbol of the initial values
+    public PackedTape(char[] values, int origin, char[] alphabet) {
+        StringBuilder symbols = new StringBuilder().append(BLANK);
+        for (char symbol : alphabet) {
+            if (symbols.indexOf(String.valueOf(symbol)) < 0) symbols.append(symbol);
+        }
+        for (char symbol : values) {
+            if (symbols.indexOf(String.valueOf(symbol)) < 0) symbols.append(symbol);
+        }
+        this.alphabet = symbols.toString().toCharArray();
+
+        int bits = 1;
+        while (1 << bits < this.alphabet.length) {
+            bits++;
+        }
+        if (bits > MAX_BITS) {
+            throw new IllegalArgumentException("Alphabet of " + this.alphabet.length + " symbols needs more than "
+                    + MAX_BITS + " bits per cell");
+        }
+        this.bits = bits;
+        this.mask = (1L << bits) - 1;
+
+        char highest = 0;
+        for (char symbol : this.alphabet) {
+            highest = (char) Math.max(highest, symbol);
+        }
+        this.codes = new int[highest + 1];
+        Arrays.fill(codes, -1);
+        for (int code = 0; code < this.alphabet.length; code++) {
+            codes[this.alphabet[code]] = code;
+        }
+
+        this.length = values.length;
+        this.origin = origin;
+        this.capacity = Math.max(MIN_CAPACITY, length * 2);
+        this.words = allocate(capacity);
+        this.start = (capacity - length) / 2;
+        for (int i = 0; i < length; i++) {
+            set(start + i, codes[values[i]]);
+        }
+    }
+
+    private PackedTape(PackedTape tape) {
+        this.alphabet = tape.alphabet;
+        this.codes = tape.codes;
+        this.bits = tape.bits;
+        this.mask = tape.mask;
+        this.words = tape.words.clone();
+        this.capacity = tape.capacity;
+        this.start = tape.start;
+        this.length = tape.length;
+        this.origin = tape.origin;
+    }
+
+    // Creates a tape for the alphabet of a compiled program: every symbol it reads or writes
+    public static PackedTape forProgram(CompiledProgram program, char[] values, int origin) {
+        StringBuilder alphabet = new StringBuilder();
+        for (int symbol = 0; symbol < program.getSymbolCount(); symbol++) {
+            alphabet.append(program.getSymbol(symbol));
+        }
+        for (int transition = 0; transition < program.getTransitionCount(); transition++) {
+            alphabet.append(program.getWriteSymbol(transition));
+        }
+        return new PackedTape(values, origin, alphabet.toString().toCharArray());
+    }
+
+    // One spare word at the end lets a straddling cell always read the next word
+    private long[] allocate(int cells) {
+        return new long[(int) (((long) cells * bits + 63) >>> 6) + 1];
+    }
+
+    // Reads the code of the cell at the given buffer position
+    private int get(int cell) {
+        long bit = (long) cell * bits;
+        int word = (int) (bit >>> 6);
+        int shift = (int) bit & 63;
+
+        // The high part contributes nothing unless the cell runs past the end of the word
+        long low = words[word] >>> shift;
+        long high = (words[word + 1] << 1) << (63 - shift);
+        return (int) ((low | high) & mask);
+    }
+
+    private void set(int cell, int code) {
+        long bit = (long) cell * bits;
+        int word = (int) (bit >>> 6);
+        int shift = (int) bit & 63;
+
+        words[word] = (words[word] & ~(mask << shift)) | ((long) code << shift);
+        words[word + 1] = (words[word + 1] & ~((mask >>> 1) >>> (63 - shift)))
+                | (((long) code >>> 1) >>> (63 - shift));
+    }
+
+    @Override
+    public void write(int index, char val) {
+        int code = val < codes.length ? codes[val] : -1;
+        if (code < 0) {
+            throw new IllegalArgumentException("Symbol '" + val + "' is not in the tape's alphabet");
+        }
+        set(start + Objects.checkIndex(index, length), code);
+    }
+
+    @Override
+    public char getValue(int index) {
+        return alphabet[get(start + Objects.checkIndex(index, length))];
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public int getOrigin() {
+        return origin;
+    }
+
+    @Override
+    public void expandOnLeft() {
+        if (start == 0) {
+            grow();
+        }
+        start--;
+        length++;
+        origin++;
+    }
+
+    @Override
+    public void expandOnRight() {
+        if (start + length == capacity) {
+            grow();
+        }
+        length++;
+    }
+
+    @Override
+    public void shrinkOnLeft() {
+        set(start, 0);
+        start++;
+        length--;
+        origin--;
+    }
+
+    @Override
+    public void shrinkOnRight() {
+        length--;
+        set(start + length, 0);
+    }
+
+    // Doubles the capacity and recentres the contents, the new slack being zero and therefore blank
+    private void grow() {
+        PackedTape old = new PackedTape(this);
+        capacity *= 2;
+        words = allocate(capacity);
+        start = (capacity - length) / 2;
+        for (int i = 0; i < length; i++) {
+            set(start + i, old.get(old.start + i));
+        }
+    }
+
+    @Override
+    public char[] getValues() {
+        char[] values = new char[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = alphabet[get(start + i)];
+        }
+        return values;
+    }
+
+    @Override
+    public Tape copy() {
+        return new PackedTape(this);
+    }
+
+    public int getBitsPerCell() {
+        return bits;
+    }
+
+    // Returns the symbols the tape can hold
+    public char[] getAlphabet() {
+        return alphabet.clone();
+    }
+}
@@ -0,0 +1,235 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Sparse tape that stores fixed-size pages of cells on demand, treating pages that were never written as blank
+ */
+public class PagedTape implements Tape {
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int NO_PAGE = Integer.MIN_VALUE; // Never a valid page number, as positions are shifted
+
+    // Pages are keyed by position relative to the original first cell, so expanding never moves any page
+    private final PageMap pages;
+    private int length;
+    private int origin;
+
+    // One-page cache for the page under the head; the cached page is null when that page is implicitly blank
+    private int cachedNumber;
+    private char[] cachedPage;
+
+    public PagedTape() {
+        this(new char[0], 0);
+    }
+
+    public PagedTape(char[] values) {
+        this(values, 0);
+    }
+
+    public PagedTape(char[] values, int origin) {
+        this.pages = new PageMap();
+        this.length = values.length;
+        this.origin = origin;
+        this.cachedNumber = NO_PAGE;
+        for (int i = 0; i < values.length; i++) {
+            write(i, values[i]);
+        }
+    }
+
+    @Override
+    public void write(int index, char val) {
+        int position = Objects.checkIndex(index, length) - origin;
+        int number = position >> PAGE_BITS;
+        char[] page = page(number);
+        if (page == null) {
+
+            // Writing a blank to a blank page changes nothing
+            if (val == BLANK) return;
+            page = new char[PAGE_SIZE];
+            Arrays.fill(page, BLANK);
+            pages.put(number, page);
+            cachedPage = page;
+        }
+        page[position & PAGE_MASK] = val;
+    }
+
+    @Override
+    public char getValue(int index) {
+        int position = Objects.checkIndex(index, length) - origin;
+        char[] page = page(position >> PAGE_BITS);
+        return page == null ? BLANK : page[position & PAGE_MASK];
+    }
+
+    private char[] page(int number) {
+        if (number != cachedNumber) {
+            cachedNumber = number;
+            cachedPage = pages.get(number);
+        }
+        return cachedPage;
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public int getOrigin() {
+        return origin;
+    }
+
+    // New cells fall on missing or blank-filled page slots, so expanding is only bookkeeping
+
+    @Override
+    public void expandOnLeft() {
+        length++;
+        origin++;
+    }
+
+    @Override
+    public void expandOnRight() {
+        length++;
+    }
+
+    @Override
+    public void shrinkOnLeft() {
+        write(0, BLANK);
+        length--;
+        origin--;
+    }
+
+    @Override
+    public void shrinkOnRight() {
+        write(length - 1, BLANK);
+        length--;
+    }
+
+    @Override
+    public char[] getValues() {
+        char[] values = new char[length];
+        int index = 0;
+        while (index < length) {
+            int position = index - origin;
+            int offset = position & PAGE_MASK;
+            int count = Math.min(PAGE_SIZE - offset, length - index);
+            char[] page = pages.get(position >> PAGE_BITS);
+            if (page == null) {
+                Arrays.fill(values, index, index + count, BLANK);
+            } else {
+                System.arraycopy(page, offset, values, index, count);
+            }
+            index += count;
+        }
+        return values;
+    }
+
+    // Same walk as getValues, a page at a time
+    @Override
+    public void putValues(CharBuffer target) {
+        int index = 0;
+        while (index < length) {
+            int position = index - origin;
+            int offset = position & PAGE_MASK;
+            int count = Math.min(PAGE_SIZE - offset, length - index);
+            char[] page = pages.get(position >> PAGE_BITS);
+            if (page == null) {
+                for (int i = 0; i < count; i++) {
+                    target.put(BLANK);
+                }
+            } else {
+                target.put(page, offset, count);
+            }
+            index += count;
+        }
+    }
+
+    // Copies only the allocated pages, so the copy stays as sparse as the original
+    @Override
+    public Tape copy() {
+        PagedTape copy = new PagedTape(new char[0], origin);
+        copy.length = length;
+        for (int i = 0; i < pages.keys.length; i++) {
+            if (pages.values[i] != null) {
+                copy.pages.put(pages.keys[i], pages.values[i].clone());
+            }
+        }
+        return copy;
+    }
+
+    // Number of pages currently allocated
+    public int getPageCount() {
+        return pages.size;
+    }
+
+    // Open-addressing hash map from page number to page, avoiding boxed keys
+    private static class PageMap {
+        private int[] keys = new int[16];
+        private char[][] values = new char[16][];
+        private int size;
+
+        char[] get(int key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) return values[i];
+            }
+            return null;
+        }
+
+        void put(int key, char[] value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (values[i] != null && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (values[i] == null) size++;
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            char[][] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new char[oldKeys.length * 2][];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        private static int hash(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.util.Arrays;
+
+/**
+ * Execution counters for a Turing machine: hits per instruction and per state, head movement and tape growth.
+ * Attached with TuringMachine.setProfiler, which then runs a separate instrumented loop, so runs without a profiler
+ * pay nothing for it. Counters accumulate over runs until reset
+ */
+public class Profiler {
+
+    private CompiledProgram program;
+    private long[] transitionHits = new long[0];
+    private long leftExpansions;
+    private long rightExpansions;
+    private int minPosition;
+    private int maxPosition;
+    private boolean positionSeen;
+    private boolean jfrEvents;
+
+    // Summary of one transition's hits, emitted at the end of each profiled run when JFR events are enabled
+    @Name("jturing.TransitionProfile")
+    @Label("Transition Profile")
+    @Category("JTuring")
+    public static class TransitionEvent extends Event {
+        @Label("State")
+        public String state;
+
+        @Label("Symbol")
+        public char symbol;
+
+        @Label("Next State")
+        public String nextState;
+
+        @Label("Hits")
+        public long hits;
+    }
+
+    // Summary of a profiled run, emitted at its end when JFR events are enabled
+    @Name("jturing.RunProfile")
+    @Label("Run Profile")
+    @Category("JTuring")
+    public static class RunEvent extends Event {
+        @Label("Steps")
+        public long steps;
+
+        @Label("Head Moves")
+        public long headMoves;
+
+        @Label("Tape Expansions")
+        public long expansions;
+    }
+
+    // Called by the instrumented loop
+
+    // Prepares the counters for a run of the given program, starting over if the program has changed
+    void begin(CompiledProgram program) {
+        if (this.program != program) {
+            this.program = program;
+            reset();
+        }
+    }
+
+    void countTransition(int transition) {
+        transitionHits[transition]++;
+    }
+
+    void countExpansion(boolean left) {
+        if (left) {
+            leftExpansions++;
+        } else {
+            rightExpansions++;
+        }
+    }
+
+    void countPosition(int position) {
+        if (!positionSeen) {
+            minPosition = position;
+            maxPosition = position;
+            positionSeen = true;
+        } else if (position < minPosition) {
+            minPosition = position;
+        } else if (position > maxPosition) {
+            maxPosition = position;
+        }
+    }
+
+    void end() {
+        if (!jfrEvents || program == null) return;
+
+        for (int i = 0; i < transitionHits.length; i++) {
+            TransitionEvent event = new TransitionEvent();
+            if (transitionHits[i] == 0 || !event.isEnabled()) continue;
+            Instruction instruction = program.getInstruction(i);
+            event.state = instruction.getOldState().getName();
+            event.symbol = instruction.getGivenSymbol();
+            event.nextState = instruction.getNewState().getName();
+            event.hits = transitionHits[i];
+            event.commit();
+        }
+
+        RunEvent event = new RunEvent();
+        if (event.isEnabled()) {
+            event.steps = getSteps();
+            event.headMoves = getHeadMoves();
+            event.expansions = leftExpansions + rightExpansions;
+            event.commit();
+        }
+    }
+
+    public void reset() {
+        transitionHits = new long[program == null ? 0 : program.getTransitionCount()];
+        leftExpansions = 0;
+        rightExpansions = 0;
+        positionSeen = false;
+    }
+
+    // Report API
+
+    // Returns the program the counters refer to, or null if nothing has been profiled yet
+    public CompiledProgram getProgram() {
+        return program;
+    }
+
+    public long getTransitionHits(int transition) {
+        return transitionHits[transition];
+    }
+
+    // Returns the hits of the given instruction object of the profiled program
+    public long getHits(Instruction instruction) {
+        for (int i = 0; i < transitionHits.length; i++) {
+            if (program.getInstruction(i) == instruction) return transitionHits[i];
+        }
+        return 0;
+    }
+
+    // Returns how many steps were executed from the given state
+    public long getStateHits(State state) {
+        long hits = 0;
+        for (int i = 0; i < transitionHits.length; i++) {
+            if (program.getInstruction(i).getOldState().getName().equals(state.getName())) hits += transitionHits[i];
+        }
+        return hits;
+    }
+
+    public long getSteps() {
+        long steps = 0;
+        for (int i = 0; i < transitionHits.length; i++) {
+            steps += transitionHits[i] * program.getSteps(i);
+        }
+        return steps;
+    }
+
+    // Total number of cells the head has moved
+    public long getHeadMoves() {
+        long moves = 0;
+        for (int i = 0; i < transitionHits.length; i++) {
+            if (program.getMove(i) != 0) moves += transitionHits[i];
+        }
+        return moves;
+    }
+
+    public long getLeftExpansions() {
+        return leftExpansions;
+    }
+
+    public long getRightExpansions() {
+        return rightExpansions;
+    }
+
+    // Leftmost and rightmost head positions reached, relative to the tape's original first cell
+
+    public int getMinPosition() {
+        return minPosition;
+    }
+
+    public int getMaxPosition() {
+        return maxPosition;
+    }
+
+    public boolean isJfrEvents() {
+        return jfrEvents;
+    }
+
+    // Emits TransitionEvent and RunEvent summaries to Java Flight Recorder at the end of every profiled run
+    public void setJfrEvents(boolean jfrEvents) {
+        this.jfrEvents = jfrEvents;
+    }
+
+    // Formats the counters as a table of states, busiest first, each followed by its transitions
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append("steps = ").append(getSteps())
+                .append(", head moves = ").append(getHeadMoves())
+                .append(", expansions = ").append(leftExpansions).append(" left / ").append(rightExpansions)
+                .append(" right, positions = [").append(minPosition).append(", ").append(maxPosition).append("]\n");
+        if (program == null) return report.toString();
+
+        Integer[] states = new Integer[program.getStateCount()];
+        long[] stateHits = new long[states.length];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = i;
+            stateHits[i] = getStateHits(program.getState(i));
+        }
+        Arrays.sort(states, (a, b) -> Long.compare(stateHits[b], stateHits[a]));
+        for (int state : states) {
+            if (stateHits[state] == 0) continue;
+            report.append(program.getState(state).getName()).append(": ").append(stateHits[state]).append('\n');
+            for (int i = 0; i < transitionHits.length; i++) {
+                Instruction instruction = program.getInstruction(i);
+                if (transitionHits[i] == 0 || program.stateId(instruction.getOldState()) != state) continue;
+                report.append("    ").append(instruction.getGivenSymbol()).append(" -> ")
+                        .append(instruction.getNewState().getName()).append(", ")
+                        .append(instruction.getWriteSymbol()).append(", ")
+                        .append(instruction.getDirection()).append(": ").append(transitionHits[i]).append('\n');
+            }
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,315 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.function.Consumer;
+
+/**
+ * Reads and writes programs outside Java code, as plain-text quintuples or as a compact binary image of a compiled
+ * program.
+ *
+ * <p>The text format has one instruction per line: the old state, the symbol read, the new state, the symbol written
+ * and the head direction, separated by whitespace, followed by the word halt for halting instructions and by steps=n
+ * for instructions that count for n steps. Symbols may be quoted as in ' ' to allow whitespace, and lines that are
+ * empty or start with # are ignored.
+ *
+ * <p>The binary format is a header of six ints (magic, version, state count, symbol count, transition count, name
+ * bytes) followed by int arrays for the alphabet, the dense transition table and the per-transition columns, then the
+ * UTF-8 state names. Every section is a fixed-width array, so loading maps the file and bulk-copies each section
+ * straight into the program's tables
+ */
+public final class ProgramFormat {
+
+    private static final int MAGIC = 0x4A545047; // "JTPG"
+    private static final int VERSION = 2; // Version 1 packed the steps into the flags, where large counts overflowed
+    private static final int HEADER_INTS = 6;
+    private static final int HALT_FLAG = 4; // Flag bits of a transition: move + 1 in the low two bits, then halt
+    private static final String STEPS_PREFIX = "steps=";
+
+    private ProgramFormat() {
+    }
+
+    // Thrown when a program file is malformed, with the line it failed on for the text format
+    public static class FormatException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public FormatException(String message) {
+            super(message);
+        }
+
+        public FormatException(int line, String message) {
+            super("Line " + line + ": " + message);
+        }
+    }
+
+    // Parses a whole text program
+    public static Instruction[] parse(Reader reader) throws IOException {
+        ArrayList<Instruction> instructions = new ArrayList<>();
+        parse(reader, instructions::add);
+        return instructions.toArray(new Instruction[0]);
+    }
+
+    // Parses a text program one line at a time, handing each instruction over as soon as it is read. States with the
+    // same name are the same object
+    public static void parse(Reader reader, Consumer<Instruction> consumer) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        HashMap<String, State> states = new HashMap<>();
+        String[] tokens = new String[7];
+        int number = 0;
+        for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+            number++;
+            int count = tokenize(line, tokens, number);
+            if (count == 0) continue;
+            if (count < 5) throw new FormatException(number, "Expected at least 5 fields but found " + count);
+            boolean halt = false;
+            int steps = 1;
+            for (int i = 5; i < count; i++) {
+                if (tokens[i].equals("halt") && !halt) {
+                    halt = true;
+                } else if (tokens[i].startsWith(STEPS_PREFIX) && steps == 1) {
+                    try {
+                        steps = Integer.parseInt(tokens[i].substring(STEPS_PREFIX.length()));
+                    } catch (NumberFormatException e) {
+                        steps = 0;
+                    }
+                    if (steps < 1) throw new FormatException(number, "Bad step count " + tokens[i]);
+                } else {
+                    throw new FormatException(number, "Expected halt or steps=n but found " + tokens[i]);
+                }
+            }
+
+            HeadDirection direction;
+            try {
+                direction = HeadDirection.valueOf(tokens[4]);
+            } catch (IllegalArgumentException e) {
+                throw new FormatException(number, "Unknown head direction " + tokens[4]);
+            }
+            consumer.accept(new Instruction(states.computeIfAbsent(tokens[0], State::new), symbol(tokens[1], number),
+                    states.computeIfAbsent(tokens[2], State::new), symbol(tokens[3], number), direction, halt, steps));
+        }
+    }
+
+    // Splits a line into at most tokens.length fields, returning how many there are
+    private static int tokenize(String line, String[] tokens, int number) throws FormatException {
+        int count = 0;
+        int i = 0;
+        int length = line.length();
+        while (true) {
+            while (i < length && Character.isWhitespace(line.charAt(i))) i++;
+            if (i == length) return count;
+            if (count == 0 && line.charAt(i) == '#') return 0;
+            if (count == tokens.length) throw new FormatException(number, "Too many fields");
+
+            int start = i;
+            if (line.charAt(i) == '\'' && i + 2 < length && line.charAt(i + 2) == '\'') {
+                i += 3;
+            } else {
+                while (i < length && !Character.isWhitespace(line.charAt(i))) i++;
+            }
+            tokens[count++] = line.substring(start, i);
+        }
+    }
+
+    private static char symbol(String token, int number) throws FormatException {
+        if (token.length() == 1) return token.charAt(0);
+        if (token.length() == 3 && token.charAt(0) == '\'' && token.charAt(2) == '\'') return token.charAt(1);
+        throw new FormatException(number, "Expected a single symbol but found " + token);
+    }
+
+    // Writes instructions in the text format
+    public static void write(Instruction[] instructions, Writer writer) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (Instruction instruction : instructions) {
+            line.setLength(0);
+            line.append(instruction.getOldState().getName()).append(' ');
+            appendSymbol(line, instruction.getGivenSymbol()).append(' ');
+            line.append(instruction.getNewState().getName()).append(' ');
+            appendSymbol(line, instruction.getWriteSymbol()).append(' ');
+            line.append(instruction.getDirection());
+            if (instruction.isHalt()) line.append(" halt");
+            if (instruction.getSteps() != 1) line.append(' ').append(STEPS_PREFIX).append(instruction.getSteps());
+            writer.write(line.append('\n').toString());
+        }
+        writer.flush();
+    }
+
+    private static StringBuilder appendSymbol(StringBuilder line, char symbol) {
+        if (Character.isWhitespace(symbol) || symbol == '\'' || symbol == '#') {
+            return line.append('\'').append(symbol).append('\'');
+        }
+        return line.append(symbol);
+    }
+
+    // Writes a compiled program in the binary format
+    public static void write(CompiledProgram program, OutputStream stream) throws IOException {
+        int stateCount = program.getStateCount();
+        int symbolCount = program.getSymbolCount();
+        int count = program.getTransitionCount();
+
+        byte[][] names = new byte[stateCount][];
+        int nameBytes = 0;
+        for (int state = 0; state < stateCount; state++) {
+            names[state] = program.getState(state).getName().getBytes(StandardCharsets.UTF_8);
+            nameBytes += names[state].length;
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(stateCount);
+        out.writeInt(symbolCount);
+        out.writeInt(count);
+        out.writeInt(nameBytes);
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            out.writeInt(program.getSymbol(symbol));
+        }
+        for (int state = 0; state < stateCount; state++) {
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                out.writeInt(program.transition(state, program.getSymbol(symbol)));
+            }
+        }
+        for (int t = 0; t < count; t++) out.writeInt(program.getOldState(t));
+        for (int t = 0; t < count; t++) out.writeInt(program.getGivenSymbol(t));
+        for (int t = 0; t < count; t++) out.writeInt(program.getNextState(t));
+        for (int t = 0; t < count; t++) out.writeInt(program.getWriteSymbol(t));
+        for (int t = 0; t < count; t++) out.writeInt((program.getMove(t) + 1) | (program.isHalt(t) ? HALT_FLAG : 0));
+        for (int t = 0; t < count; t++) out.writeInt(program.getSteps(t));
+
+        // Name offsets, then the names themselves
+        int offset = 0;
+        for (int state = 0; state < stateCount; state++) {
+            out.writeInt(offset);
+            offset += names[state].length;
+        }
+        out.writeInt(offset);
+        for (byte[] name : names) {
+            out.write(name);
+        }
+        out.flush();
+    }
+
+    public static void save(CompiledProgram program, Path file) throws IOException {
+        try (OutputStream stream = Files.newOutputStream(file)) {
+            write(program, stream);
+        }
+    }
+
+    // Maps a binary program file and builds the compiled program from its tables, without parsing any instructions
+    public static CompiledProgram load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // Reads a binary program from a buffer positioned at its first byte
+    public static CompiledProgram read(ByteBuffer buffer) throws FormatException {
+        if (buffer.remaining() < HEADER_INTS * 4) throw new FormatException("Truncated header");
+        IntBuffer ints = buffer.asIntBuffer();
+        if (ints.get() != MAGIC) throw new FormatException("Not a program file");
+        int version = ints.get();
+        if (version != VERSION) throw new FormatException("Unsupported version " + version);
+        int stateCount = ints.get();
+        int symbolCount = ints.get();
+        int count = ints.get();
+        int nameBytes = ints.get();
+        if (stateCount < 0 || symbolCount < 0 || count < 0 || nameBytes < 0) {
+            throw new FormatException("Negative section size");
+        }
+
+        long intCount = HEADER_INTS + symbolCount + (long) stateCount * symbolCount + 6L * count + stateCount + 1;
+        if (buffer.remaining() < intCount * 4 + nameBytes) throw new FormatException("Truncated program");
+
+        int[] symbols = new int[symbolCount];
+        int[] table = new int[stateCount * symbolCount];
+        int[] oldStates = new int[count];
+        int[] givenSymbols = new int[count];
+        int[] nextStates = new int[count];
+        int[] writeSymbols = new int[count];
+        int[] flags = new int[count];
+        int[] steps = new int[count];
+        int[] nameOffsets = new int[stateCount + 1];
+        ints.get(symbols).get(table).get(oldStates).get(givenSymbols).get(nextStates).get(writeSymbols).get(flags)
+                .get(steps).get(nameOffsets);
+
+        char[] alphabet = chars(symbols);
+        if (new String(alphabet).chars().distinct().count() != symbolCount) {
+            throw new FormatException("Repeated symbol in alphabet");
+        }
+        char[] given = chars(givenSymbols);
+        char[] written = chars(writeSymbols);
+        int[] moves = new int[count];
+        boolean[] halts = new boolean[count];
+        for (int t = 0; t < count; t++) {
+            if ((flags[t] & ~(HALT_FLAG | 3)) != 0 || (flags[t] & 3) == 3) throw new FormatException("Bad flags");
+            if (steps[t] <= 0) throw new FormatException("Bad step count");
+            if (oldStates[t] < 0 || oldStates[t] >= stateCount || nextStates[t] < 0 || nextStates[t] >= stateCount) {
+                throw new FormatException("State id out of range");
+            }
+            moves[t] = (flags[t] & 3) - 1;
+            halts[t] = (flags[t] & HALT_FLAG) != 0;
+        }
+        for (int transition : table) {
+            if (transition < -1 || transition >= count) throw new FormatException("Transition out of range");
+        }
+
+        ByteBuffer names = buffer.duplicate();
+        names.position(buffer.position() + (int) intCount * 4);
+        byte[] bytes = new byte[nameBytes];
+        names.get(bytes);
+        State[] states = new State[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            int from = nameOffsets[state];
+            int to = nameOffsets[state + 1];
+            if (from < 0 || to < from || to > nameBytes) throw new FormatException("Bad state name offsets");
+            states[state] = new State(new String(bytes, from, to - from, StandardCharsets.UTF_8));
+        }
+
+        return new CompiledProgram(states, alphabet, table, oldStates, given, nextStates, written, moves, halts, steps,
+                null);
+    }
+
+    private static char[] chars(int[] values) throws FormatException {
+        char[] chars = new char[values.length];
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] < 0 || values[i] > Character.MAX_VALUE) throw new FormatException("Symbol out of range");
+            chars[i] = (char) values[i];
+        }
+        return chars;
+    }
+}
@@ -0,0 +1,213 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Shrinks an instruction set without changing what it does from a given initial state: the same tape, head position,
+ * time and outcome for every input. Passes run in this order:
+ *
+ * <p>Overridden quintuples, which a later one for the same state and symbol replaces, are dropped. Chains of
+ * transitions that leave the head where it is are folded into their first transition, which then counts for the
+ * steps of the whole chain. Transitions of states that cannot be reached from the initial state are dropped. States
+ * that behave the same for every symbol are merged by partition refinement.
+ *
+ * <p>A merged state is renamed to the first state of its class, so a machine that stops on a missing transition in a
+ * merged state reports the surviving name. The states halting transitions enter, and states without transitions,
+ * are kept as they are. Folding assumes deterministic execution, so the result is not meant for
+ * ExecutionMode.NONDETERMINISTIC
+ */
+public final class ProgramOptimizer {
+
+    private ProgramOptimizer() {
+    }
+
+    // Runs every pass over the instructions
+    public static Instruction[] optimize(Instruction[] instructions, State initialState) {
+        Instruction[] result = removeOverridden(instructions);
+        result = foldStationaryChains(result);
+        result = removeUnreachable(result, initialState);
+        return mergeEquivalentStates(result, initialState);
+    }
+
+    // Keeps only the quintuples the transition table actually uses
+    public static Instruction[] removeOverridden(Instruction[] instructions) {
+        CompiledProgram program = CompiledProgram.compile(instructions);
+        List<Instruction> result = new ArrayList<>();
+        for (int state = 0; state < program.getStateCount(); state++) {
+            for (int symbol = 0; symbol < program.getSymbolCount(); symbol++) {
+                int transition = program.transition(state, program.getSymbol(symbol));
+                if (transition >= 0) result.add(instructions[transition]);
+            }
+        }
+        return result.toArray(new Instruction[0]);
+    }
+
+    // Folds each run of non-halting transitions with direction C into the transition that starts it. The head stays
+    // on one cell throughout, so only the last write and the last transition's move, state and halt matter. A chain
+    // stops early at a missing transition or on revisiting a transition, leaving the rest to run as before
+    public static Instruction[] foldStationaryChains(Instruction[] instructions) {
+        CompiledProgram program = CompiledProgram.compile(instructions);
+        Instruction[] result = new Instruction[instructions.length];
+        for (int t = 0; t < instructions.length; t++) {
+            Instruction instruction = instructions[t];
+            if (program.getMove(t) != 0 || program.isHalt(t)) {
+                result[t] = instruction;
+                continue;
+            }
+
+            State state = program.getNewState(t);
+            char symbol = program.getWriteSymbol(t);
+            int next = program.getNextState(t);
+            int move = 0;
+            boolean halt = false;
+            long steps = program.getSteps(t);
+            boolean[] seen = new boolean[instructions.length];
+            seen[t] = true;
+            while (true) {
+                int u = program.transition(next, symbol);
+                if (u < 0 || seen[u] || steps + program.getSteps(u) > Integer.MAX_VALUE) break;
+                seen[u] = true;
+                state = program.getNewState(u);
+                symbol = program.getWriteSymbol(u);
+                next = program.getNextState(u);
+                move = program.getMove(u);
+                halt = program.isHalt(u);
+                steps += program.getSteps(u);
+                if (move != 0 || halt) break;
+            }
+            result[t] = new Instruction(instruction.getOldState(), instruction.getGivenSymbol(), state, symbol,
+                    move < 0 ? HeadDirection.L : move > 0 ? HeadDirection.R : HeadDirection.C, halt, (int) steps);
+        }
+        return result;
+    }
+
+    // Drops the transitions of states the machine cannot enter from the initial state. States only entered by
+    // halting transitions never run a transition of their own
+    public static Instruction[] removeUnreachable(Instruction[] instructions, State initialState) {
+        CompiledProgram program = CompiledProgram.compile(instructions);
+        int start = program.stateId(initialState);
+        if (start < 0) return new Instruction[0];
+
+        boolean[] reachable = new boolean[program.getStateCount()];
+        int[] stack = new int[program.getStateCount()];
+        int size = 0;
+        reachable[start] = true;
+        stack[size++] = start;
+        while (size > 0) {
+            int state = stack[--size];
+            for (int symbol = 0; symbol < program.getSymbolCount(); symbol++) {
+                int transition = program.transition(state, program.getSymbol(symbol));
+                if (transition < 0 || program.isHalt(transition)) continue;
+                int next = program.getNextState(transition);
+                if (!reachable[next]) {
+                    reachable[next] = true;
+                    stack[size++] = next;
+                }
+            }
+        }
+
+        List<Instruction> result = new ArrayList<>();
+        for (int t = 0; t < instructions.length; t++) {
+            if (reachable[program.getOldState(t)]) result.add(instructions[t]);
+        }
+        return result.toArray(new Instruction[0]);
+    }
+
+    // Merges states that write, move, halt and count steps alike for every symbol and go to states that are
+    // themselves equivalent, refining a partition by those signatures until it is stable
+    public static Instruction[] mergeEquivalentStates(Instruction[] instructions, State initialState) {
+        Instruction[] effective = removeOverridden(instructions);
+        CompiledProgram program = CompiledProgram.compile(effective);
+        int stateCount = program.getStateCount();
+        int symbolCount = program.getSymbolCount();
+
+        // States with transitions take part; states only ever entered by halting transitions are left alone
+        boolean[] active = new boolean[stateCount];
+        for (int t = 0; t < effective.length; t++) {
+            active[program.getOldState(t)] = true;
+        }
+
+        int[] block = new int[stateCount];
+        int blocks = -1;
+        while (true) {
+            HashMap<List<Object>, Integer> signatures = new HashMap<>();
+            int[] refined = new int[stateCount];
+            for (int state = 0; state < stateCount; state++) {
+                if (!active[state]) {
+                    refined[state] = -1;
+                    continue;
+                }
+                List<Object> signature = new ArrayList<>();
+                signature.add(block[state]);
+                for (int symbol = 0; symbol < symbolCount; symbol++) {
+                    int t = program.transition(state, program.getSymbol(symbol));
+                    if (t < 0) {
+                        signature.add(null);
+                        continue;
+                    }
+                    signature.add(program.getWriteSymbol(t));
+                    signature.add(program.getMove(t));
+                    signature.add(program.getSteps(t));
+                    signature.add(program.isHalt(t));
+
+                    // A state left alone is told apart by name, since the run may stop in it and report it
+                    int next = program.getNextState(t);
+                    signature.add(program.isHalt(t) || !active[next] ? program.getNewState(t).getName()
+                            : block[next]);
+                }
+                refined[state] = signatures.computeIfAbsent(signature, key -> signatures.size());
+            }
+            block = refined;
+            if (signatures.size() == blocks) break;
+            blocks = signatures.size();
+        }
+
+        // The first state of each class represents it, except that the initial state represents its own class
+        State[] representatives = new State[Math.max(blocks, 0)];
+        int start = program.stateId(initialState);
+        if (start >= 0 && active[start]) representatives[block[start]] = program.getState(start);
+        for (int state = 0; state < stateCount; state++) {
+            if (active[state] && representatives[block[state]] == null) {
+                representatives[block[state]] = program.getState(state);
+            }
+        }
+
+        List<Instruction> result = new ArrayList<>();
+        for (int t = 0; t < effective.length; t++) {
+            Instruction instruction = effective[t];
+            int old = program.getOldState(t);
+            if (representatives[block[old]] != program.getState(old)) continue;
+            int next = program.getNextState(t);
+            State newState = program.isHalt(t) || !active[next] ? instruction.getNewState()
+                    : representatives[block[next]];
+            result.add(new Instruction(representatives[block[old]], instruction.getGivenSymbol(), newState,
+                    instruction.getWriteSymbol(), instruction.getDirection(), instruction.isHalt(),
+                    instruction.getSteps()));
+        }
+        return result.toArray(new Instruction[0]);
+    }
+}
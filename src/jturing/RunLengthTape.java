@@ -0,0 +1,312 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Tape stored as runs of repeated symbols, kept in two stacks that meet at a cursor following the head, so that
+ * accessing and splitting runs near the head is cheap and sweeping over a long run costs a single operation
+ */
+public class RunLengthTape implements Tape {
+
+    // Runs left of the cursor, the leftmost run at the bottom of the stack
+    private char[] leftSymbols;
+    private int[] leftLengths;
+    private int leftSize;
+
+    // Runs from the cursor onwards, the rightmost run at the bottom and the run holding the cursor on top
+    private char[] rightSymbols;
+    private int[] rightLengths;
+    private int rightSize;
+
+    private int cursor; // Index of the first cell of the run on top of the right stack
+    private int length;
+    private int origin;
+
+    public RunLengthTape(char[] values) {
+        this(values, 0);
+    }
+
+    public RunLengthTape(char[] values, int origin) {
+        this.leftSymbols = new char[16];
+        this.leftLengths = new int[16];
+        this.rightSymbols = new char[16];
+        this.rightLengths = new int[16];
+        this.length = values.length;
+        this.origin = origin;
+
+        // Push runs from the right so the leftmost one ends up on top
+        int end = values.length;
+        while (end > 0) {
+            int begin = end - 1;
+            while (begin > 0 && values[begin - 1] == values[end - 1]) {
+                begin--;
+            }
+            pushRight(values[end - 1], end - begin);
+            end = begin;
+        }
+    }
+
+    private RunLengthTape(RunLengthTape tape) {
+        this.leftSymbols = tape.leftSymbols.clone();
+        this.leftLengths = tape.leftLengths.clone();
+        this.leftSize = tape.leftSize;
+        this.rightSymbols = tape.rightSymbols.clone();
+        this.rightLengths = tape.rightLengths.clone();
+        this.rightSize = tape.rightSize;
+        this.cursor = tape.cursor;
+        this.length = tape.length;
+        this.origin = tape.origin;
+    }
+
+    // Moves runs between the stacks until the run holding the given index is on top of the right stack
+    private void locate(int index) {
+        while (index < cursor) {
+            leftSize--;
+            cursor -= leftLengths[leftSize];
+            pushRight(leftSymbols[leftSize], leftLengths[leftSize]);
+        }
+        while (index >= cursor + rightLengths[rightSize - 1]) {
+            rightSize--;
+            pushLeft(rightSymbols[rightSize], rightLengths[rightSize]);
+        }
+    }
+
+    // Pushes cells just left of the cursor, merging them into the top run if it has the same symbol
+    private void pushLeft(char symbol, int count) {
+        cursor += count;
+        if (leftSize > 0 && leftSymbols[leftSize - 1] == symbol) {
+            leftLengths[leftSize - 1] += count;
+            return;
+        }
+        ensureLeftCapacity();
+        leftSymbols[leftSize] = symbol;
+        leftLengths[leftSize] = count;
+        leftSize++;
+    }
+
+    // Pushes cells at the cursor, merging them into the top run if it has the same symbol
+    private void pushRight(char symbol, int count) {
+        if (rightSize > 0 && rightSymbols[rightSize - 1] == symbol) {
+            rightLengths[rightSize - 1] += count;
+            return;
+        }
+        ensureRightCapacity();
+        rightSymbols[rightSize] = symbol;
+        rightLengths[rightSize] = count;
+        rightSize++;
+    }
+
+    private void ensureLeftCapacity() {
+        if (leftSize == leftSymbols.length) {
+            leftSymbols = Arrays.copyOf(leftSymbols, leftSize * 2);
+            leftLengths = Arrays.copyOf(leftLengths, leftSize * 2);
+        }
+    }
+
+    private void ensureRightCapacity() {
+        if (rightSize == rightSymbols.length) {
+            rightSymbols = Arrays.copyOf(rightSymbols, rightSize * 2);
+            rightLengths = Arrays.copyOf(rightLengths, rightSize * 2);
+        }
+    }
+
+    @Override
+    public void write(int index, char val) {
+        locate(Objects.checkIndex(index, length));
+        char symbol = rightSymbols[rightSize - 1];
+        if (symbol == val) return;
+
+        // Split the run around the written cell, leaving the cell's own run on top
+        int runLength = rightLengths[rightSize - 1];
+        int offset = index - cursor;
+        rightSize--;
+        if (runLength - offset - 1 > 0) pushRight(symbol, runLength - offset - 1);
+        pushRight(val, 1);
+        if (offset > 0) pushLeft(symbol, offset);
+
+        // Join the run on the left if the new symbol continues it
+        if (offset == 0 && leftSize > 0 && leftSymbols[leftSize - 1] == val) {
+            leftSize--;
+            cursor -= leftLengths[leftSize];
+            rightLengths[rightSize - 1] += leftLengths[leftSize];
+        }
+    }
+
+    @Override
+    public char getValue(int index) {
+        locate(Objects.checkIndex(index, length));
+        return rightSymbols[rightSize - 1];
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public int getOrigin() {
+        return origin;
+    }
+
+    @Override
+    public void expandOnLeft() {
+        if (leftSize == 0) {
+            pushRight(BLANK, 1);
+        } else if (leftSymbols[0] == BLANK) {
+            leftLengths[0]++;
+            cursor++;
+        } else {
+            insertAtBottom(true);
+            cursor++;
+        }
+        length++;
+        origin++;
+    }
+
+    @Override
+    public void expandOnRight() {
+        if (rightSize == 0) {
+            pushRight(BLANK, 1);
+        } else if (rightSymbols[0] == BLANK) {
+            rightLengths[0]++;
+        } else {
+            insertAtBottom(false);
+        }
+        length++;
+    }
+
+    // Inserts a blank run under the bottom of a stack. The head is at that end of the tape when expanding, so the
+    // stack is short and the shift is cheap
+    private void insertAtBottom(boolean left) {
+        if (left) {
+            ensureLeftCapacity();
+            System.arraycopy(leftSymbols, 0, leftSymbols, 1, leftSize);
+            System.arraycopy(leftLengths, 0, leftLengths, 1, leftSize);
+            leftSymbols[0] = BLANK;
+            leftLengths[0] = 1;
+            leftSize++;
+        } else {
+            ensureRightCapacity();
+            System.arraycopy(rightSymbols, 0, rightSymbols, 1, rightSize);
+            System.arraycopy(rightLengths, 0, rightLengths, 1, rightSize);
+            rightSymbols[0] = BLANK;
+            rightLengths[0] = 1;
+            rightSize++;
+        }
+    }
+
+    @Override
+    public void shrinkOnLeft() {
+        locate(0);
+        if (--rightLengths[rightSize - 1] == 0) rightSize--;
+        length--;
+        origin--;
+    }
+
+    @Override
+    public void shrinkOnRight() {
+        locate(length - 1);
+        if (--rightLengths[rightSize - 1] == 0) rightSize--;
+        length--;
+    }
+
+    @Override
+    public char[] getValues() {
+        char[] values = new char[length];
+        int index = 0;
+        for (int i = 0; i < leftSize; i++) {
+            Arrays.fill(values, index, index + leftLengths[i], leftSymbols[i]);
+            index += leftLengths[i];
+        }
+        for (int i = rightSize - 1; i >= 0; i--) {
+            Arrays.fill(values, index, index + rightLengths[i], rightSymbols[i]);
+            index += rightLengths[i];
+        }
+        return values;
+    }
+
+    // Same walk as getValues, a run at a time
+    @Override
+    public void putValues(CharBuffer target) {
+        for (int i = 0; i < leftSize; i++) {
+            for (int j = 0; j < leftLengths[i]; j++) {
+                target.put(leftSymbols[i]);
+            }
+        }
+        for (int i = rightSize - 1; i >= 0; i--) {
+            for (int j = 0; j < rightLengths[i]; j++) {
+                target.put(rightSymbols[i]);
+            }
+        }
+    }
+
+    // Rewrites whole runs at a time instead of cell by cell
+    @Override
+    public int sweep(int index, int move, boolean[] loops, char[] rewrite, int max) {
+        Objects.checkIndex(index, length);
+        int limit = move > 0 ? length - 1 : 0;
+        int count = 0;
+        while (index != limit && count < max) {
+            locate(index);
+            char symbol = rightSymbols[rightSize - 1];
+            if (symbol >= loops.length || !loops[symbol]) break;
+            char replacement = rewrite[symbol];
+            int runLength = rightLengths[rightSize - 1];
+            int offset = index - cursor;
+            rightSize--;
+
+            if (move > 0) {
+                // Cells from the head to the end of the run move to the left stack, rewritten
+                int cells = Math.min(Math.min(runLength - offset, limit - index), max - count);
+                if (runLength - offset - cells > 0) pushRight(symbol, runLength - offset - cells);
+                if (offset > 0) pushLeft(symbol, offset);
+                pushLeft(replacement, cells);
+                index += cells;
+                count += cells;
+            } else {
+                // Cells from the start of the run to the head are rewritten in place, the part before stays on top
+                int cells = Math.min(Math.min(offset + 1, index - limit), max - count);
+                if (runLength - offset - 1 > 0) pushRight(symbol, runLength - offset - 1);
+                pushRight(replacement, cells);
+                if (offset + 1 - cells > 0) pushRight(symbol, offset + 1 - cells);
+                index -= cells;
+                count += cells;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public Tape copy() {
+        return new RunLengthTape(this);
+    }
+
+    // Number of runs the tape is currently stored as
+    public int getRunCount() {
+        return leftSize + rightSize;
+    }
+}
@@ -0,0 +1,88 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Limits and checks applied to a run of a Turing machine. By default a run is unlimited, as it always used to be
+ */
+public class RunOptions {
+
+    private long maxSteps = Long.MAX_VALUE;
+    private Duration timeout;
+    private BooleanSupplier cancellation;
+    private boolean cycleDetection;
+    private int checkInterval = 1 << 16;
+
+    public long getMaxSteps() {
+        return maxSteps;
+    }
+
+    // Number of steps after which the run ends with BUDGET_EXHAUSTED. A folded transition counts for several steps but
+    // cannot be split, so one that starts inside the budget is taken whole, and the machine's time may then pass the
+    // budget by less than the longest fold
+    public void setMaxSteps(long maxSteps) {
+        if (maxSteps < 0) throw new IllegalArgumentException("Step budget cannot be negative: " + maxSteps);
+        this.maxSteps = maxSteps;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    // Wall-clock time after which the run ends with BUDGET_EXHAUSTED, or null for no deadline
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    public BooleanSupplier getCancellation() {
+        return cancellation;
+    }
+
+    // Polled every check interval; once it returns true the run ends with CANCELLED
+    public void setCancellation(BooleanSupplier cancellation) {
+        this.cancellation = cancellation;
+    }
+
+    public boolean isCycleDetection() {
+        return cycleDetection;
+    }
+
+    // Whether to watch for a configuration that repeats exactly, which proves the machine will never halt. The run
+    // then goes step by step, hashing every configuration, so it is considerably slower
+    public void setCycleDetection(boolean cycleDetection) {
+        this.cycleDetection = cycleDetection;
+    }
+
+    public int getCheckInterval() {
+        return checkInterval;
+    }
+
+    // Number of steps between checks of the deadline and the cancellation
+    public void setCheckInterval(int checkInterval) {
+        if (checkInterval <= 0) throw new IllegalArgumentException("Check interval must be positive: " + checkInterval);
+        this.checkInterval = checkInterval;
+    }
+}
@@ -22,64 +22,72 @@
 
 package jturing;
 
+import java.nio.CharBuffer;
+
 /**
  * Turing Tape that can expand virtually infinitely in two directions
  */
-public class Tape {
+public interface Tape {
 
-    private char[] values;
-    private final char blankChar = '-';
+    char BLANK = '-';
 
-    public Tape(char[] values) {
-        this.values = values;
+    // Returns an array-backed tape holding the given cells, as new Tape(values) did before Tape became an interface
+    static Tape of(char[] values) {
+        return new ArrayTape(values);
     }
 
-    public Tape(char[] values, boolean overwrite) {
-        this.values = values;
-        if (overwrite) {
-            for (int i = 0; i < values.length; i++) {
-                values[0] = blankChar;
-            }
-        }
-    }
-
-    public void write(int index, char val) {
-        values[index] = val;
-    }
+    // Writes a symbol to the cell at the given index, counted from the leftmost cell
+    void write(int index, char val);
 
-    public int getLength() {
-        return values.length;
-    }
+    // Reads the symbol in the cell at the given index, counted from the leftmost cell
+    char getValue(int index);
 
-    public void expandOnLeft() {
-        char[] newValues = new char[values.length + 1];
+    int getLength();
 
-        // Expand array towards right
-        System.arraycopy(values, 0, newValues, 1, values.length);
+    // Number of cells added on the left since the tape was created, so head positions can stay relative to its
+    // original first cell
+    int getOrigin();
 
-        // Overwrite first element with blank symbol
-        newValues[0] = blankChar;
+    // Adds a blank cell before the leftmost cell
+    void expandOnLeft();
 
-        values = newValues;
-    }
+    // Adds a blank cell after the rightmost cell
+    void expandOnRight();
 
-    public void expandOnRight() {
-        char[] newValues = new char[values.length + 1];
+    // Removes the leftmost cell, undoing an expandOnLeft
+    void shrinkOnLeft();
 
-        // Expand array on right side
-        System.arraycopy(values, 0, newValues, 0, values.length);
+    // Removes the rightmost cell, undoing an expandOnRight
+    void shrinkOnRight();
 
-        // Overwrite last element with blank symbol
-        newValues[newValues.length - 1] = blankChar;
+    // Returns a copy of the cells on the tape
+    char[] getValues();
 
-        values = newValues;
+    // Puts the cells into the buffer at its position, as getValues would return them, without an array in between
+    default void putValues(CharBuffer target) {
+        int length = getLength();
+        for (int i = 0; i < length; i++) {
+            target.put(getValue(i));
+        }
     }
 
-    public char getValue(int index) {
-        return values[index];
+    // Applies a run of self-looping steps in one go. Starting at index, while the cell holds a symbol with
+    // loops[symbol] set it is overwritten with rewrite[symbol] and the head moves by move (-1 or 1). Stops after max
+    // cells, or before the outermost cell in that direction so expanding is left to a regular step. Returns the number
+    // of cells processed
+    default int sweep(int index, int move, boolean[] loops, char[] rewrite, int max) {
+        int limit = move > 0 ? getLength() - 1 : 0;
+        int count = 0;
+        while (index != limit && count < max) {
+            char symbol = getValue(index);
+            if (symbol >= loops.length || !loops[symbol]) break;
+            write(index, rewrite[symbol]);
+            index += move;
+            count++;
+        }
+        return count;
     }
 
-    public char[] getValues() {
-        return values;
-    }
+    // Returns an independent tape of the same kind with the same cells and origin
+    Tape copy();
 }
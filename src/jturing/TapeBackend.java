@@ -0,0 +1,73 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+/**
+ * Storage strategies a Turing machine can use for its tape
+ */
+public enum TapeBackend {
+
+    // Contiguous char array, fastest for tapes whose cells are mostly in use
+    ARRAY {
+        public Tape create(char[] values, int origin) {
+            return new ArrayTape(values, origin);
+        }
+    },
+
+    // Fixed-size pages allocated on demand, for tapes with islands of data far apart
+    PAGED {
+        public Tape create(char[] values, int origin) {
+            return new PagedTape(values, origin);
+        }
+    },
+
+    // Runs of repeated symbols, for tapes made of long uniform blocks
+    RUN_LENGTH {
+        public Tape create(char[] values, int origin) {
+            return new RunLengthTape(values, origin);
+        }
+    },
+
+    // Bit-packed cells, for programs with at most 16 symbols including the blank
+    PACKED {
+        public Tape create(char[] values, int origin) {
+            return new PackedTape(values, origin, new char[0]);
+        }
+
+        public Tape create(char[] values, int origin, CompiledProgram program) {
+            return program == null ? create(values, origin) : PackedTape.forProgram(program, values, origin);
+        }
+    };
+
+    // Creates a tape of this kind holding the given cells, origin cells of which lie left of the original first cell
+    public abstract Tape create(char[] values, int origin);
+
+    // Creates a tape able to hold every symbol the program writes, which PACKED needs to size its cells up front
+    public Tape create(char[] values, int origin, CompiledProgram program) {
+        return create(values, origin);
+    }
+
+    public Tape create(char[] values) {
+        return create(values, 0);
+    }
+}
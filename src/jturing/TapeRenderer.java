@@ -0,0 +1,254 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Draws frames of a running machine in the format of printTape, showing only a window of cells around the head and
+ * only every so many steps or so often. Frames are built in reused buffers and written to a channel by a background
+ * thread, so the run carries on drawing the next frame while the last one is written
+ */
+public class TapeRenderer implements Closeable {
+
+    private static final String RULE = "=============================================";
+
+    private final WritableByteChannel channel;
+    private int window = 40;
+    private int stepInterval = 1;
+    private long frameNanos;
+
+    // Two buffers travel between the renderer and the writer, so at most one frame waits while another is written
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(2);
+    private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(2);
+    private final StringBuilder frame = new StringBuilder();
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private Thread writer;
+    private volatile IOException failure;
+
+    private long steps;
+    private long lastFrame;
+    private boolean drawnAny;
+
+    public TapeRenderer() {
+        this(Channels.newChannel(System.out));
+    }
+
+    public TapeRenderer(WritableByteChannel channel) {
+        this.channel = channel;
+        free.add(ByteBuffer.allocate(1 << 12));
+        free.add(ByteBuffer.allocate(1 << 12));
+    }
+
+    // Called after every step; draws a frame when one is due, and always once the machine has halted
+    public void step(TuringMachine machine) {
+        steps++;
+        if (!machine.isHalt()) {
+            if (steps % stepInterval != 0) return;
+            if (frameNanos > 0) {
+                long now = System.nanoTime();
+                if (drawnAny && now - lastFrame < frameNanos) return;
+                lastFrame = now;
+            }
+        }
+        drawnAny = true;
+        draw(machine);
+    }
+
+    // Draws a frame of the machine as it is now
+    public void draw(TuringMachine machine) {
+        frame.setLength(0);
+        appendFrame(frame, machine, window);
+        submit(frame);
+    }
+
+    // Appends a frame in the format of printTape, limited to window cells either side of the head if window is positive
+    static void appendFrame(StringBuilder frame, TuringMachine machine, int window) {
+        Tape tape = machine.getTape();
+        int length = tape.getLength();
+        int head = machine.getCurrentPosition() + tape.getOrigin();
+        int from = 0;
+        int to = length;
+        if (window > 0) {
+            from = Math.max(0, Math.min(head, length) - window);
+            to = Math.min(length, Math.max(head, 0) + window + 1);
+        }
+
+        frame.append('\n');
+        if (from > 0) frame.append("...");
+        int caret = (from > 0 ? 3 : 0) + (head - from) * 2 + 1;
+        frame.append('|');
+        for (int i = from; i < to; i++) {
+            frame.append(tape.getValue(i)).append('|');
+        }
+        if (to < length) frame.append("...");
+        frame.append('\n');
+        for (int i = 0; i < caret; i++) {
+            frame.append(' ');
+        }
+        frame.append('^');
+
+        frame.append("\ncurrentState = ").append(machine.getCurrentState().getName()).append('\n');
+        if (!machine.isHalt()) {
+            frame.append("direction = ").append(machine.getCurrentInstruction().getDirection()).append('\n');
+        }
+        frame.append("time = ").append(machine.getTime()).append('\n');
+        frame.append(RULE);
+    }
+
+    private void submit(CharSequence text) {
+        checkFailure();
+        ByteBuffer buffer = take(free);
+        buffer.clear();
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                buffer = grow(buffer);
+                continue;
+            }
+            result = encoder.flush(buffer);
+            if (result.isOverflow()) {
+                buffer = grow(buffer);
+                continue;
+            }
+            break;
+        }
+        buffer.flip();
+        startWriter();
+        full.add(buffer);
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer) {
+        ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        return larger.put(buffer);
+    }
+
+    private void startWriter() {
+        if (writer != null) return;
+        writer = new Thread(this::write, "tape-renderer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Writer thread: writes frames in order until interrupted by close()
+    private void write() {
+        try {
+            while (true) {
+                ByteBuffer buffer = full.take();
+                try {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+                free.add(buffer);
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    // Waits until every frame drawn so far has been written
+    public void flush() {
+        ByteBuffer first = take(free);
+        ByteBuffer second = take(free);
+        free.add(first);
+        free.add(second);
+        checkFailure();
+    }
+
+    private static ByteBuffer take(BlockingQueue<ByteBuffer> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the renderer", e);
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) throw new UncheckedIOException(failure);
+    }
+
+    // Writes any pending frames and stops the writer thread; the channel itself is left open
+    @Override
+    public void close() {
+        flush();
+        if (writer != null) {
+            writer.interrupt();
+            writer = null;
+        }
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    // Number of cells shown either side of the head, or 0 to show the whole tape
+    public void setWindow(int window) {
+        if (window < 0) throw new IllegalArgumentException("Window cannot be negative: " + window);
+        this.window = window;
+    }
+
+    public int getStepInterval() {
+        return stepInterval;
+    }
+
+    // Draws only every stepInterval-th step
+    public void setStepInterval(int stepInterval) {
+        if (stepInterval <= 0) throw new IllegalArgumentException("Step interval must be positive: " + stepInterval);
+        this.stepInterval = stepInterval;
+    }
+
+    public Duration getFrameInterval() {
+        return Duration.ofNanos(frameNanos);
+    }
+
+    // Minimum time between frames, or zero for no limit; steps due for a frame within it are skipped
+    public void setFrameInterval(Duration frameInterval) {
+        if (frameInterval.isNegative()) throw new IllegalArgumentException("Frame interval cannot be negative");
+        this.frameNanos = frameInterval.toNanos();
+    }
+
+    // Frame rate limit, the inverse of the frame interval
+    public void setFrameRate(double framesPerSecond) {
+        if (!(framesPerSecond > 0)) throw new IllegalArgumentException("Frame rate must be positive: " + framesPerSecond);
+        this.frameNanos = (long) (1e9 / framesPerSecond);
+    }
+}
@@ -0,0 +1,386 @@
+/**The MIT License (MIT)
+
+ Copyright (c) 2016 Mark Ormerod
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in all
+ copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ SOFTWARE.**/
+
+package jturing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Log of every step of a run, written to a rolling set of memory-mapped segment files in a directory. Each step is a
+ * fixed-width record of its time, state id, head position, the symbol read and written, the head move and whether it
+ * halted, so any step can be found by index without reading the ones before it. State ids are those of the machine's
+ * compiled program.
+ *
+ * <p>A segment is a header (magic, version, record size, records per segment, index of its first record and record
+ * count) followed by its records. Records go straight into the mapping with no allocation, and the count in the header
+ * is brought up to date every batch of records, when a segment fills up and on flush and close. Once there are more
+ * than maxSegments segments the oldest is deleted.
+ *
+ * <p>Each segment starts with a keyframe in a file of its own: a header (magic, version, index of the segment's first
+ * record, tape origin and tape length) and the tape cells as chars, as they were before the segment's first step.
+ * Replaying a step starts from the keyframe of its segment, so it reads no more than one segment's records and works
+ * however many older segments have been deleted. Writing a keyframe copies the whole tape on the run's thread
+ */
+public class TraceLog implements Closeable {
+
+    private static final int MAGIC = 0x4A545452; // "JTTR"
+    private static final int VERSION = 2; // Version 1 had no keyframes
+    private static final int HEADER = 32;
+    private static final int COUNT_OFFSET = 24;
+    private static final int RECORD = 24; // time 8, state 4, position 4, read 2, written 2, move 1, flags 1, unused 2
+    private static final int HALT_FLAG = 1;
+    private static final int BATCH = 4096; // Records between updates of the header count
+    private static final String PREFIX = "trace-";
+    private static final String SUFFIX = ".seg";
+    private static final int KEYFRAME_MAGIC = 0x4A544B46; // "JTKF"
+    private static final int KEYFRAME_HEADER = 24;
+    private static final String KEYFRAME_SUFFIX = ".key";
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final int maxSegments;
+    private final ArrayList<Path> segments = new ArrayList<>();
+    private MappedByteBuffer segment;
+    private long segmentFirst;
+    private int segmentCount;
+    private long count;
+    private CompiledProgram program;
+    private State lastState; // Most recent state looked up, as steps tend to stay in one state for a while
+    private int lastStateId;
+
+    // Segments of 4M records each, all kept
+    public TraceLog(Path directory) throws IOException {
+        this(directory, 1 << 22, 0);
+    }
+
+    // Starts a new log in the directory, deleting the segments of any earlier one. Keeps at most maxSegments segments
+    // of segmentRecords records each, or all of them if maxSegments is 0
+    public TraceLog(Path directory, int segmentRecords, int maxSegments) throws IOException {
+        if (segmentRecords <= 0 || (long) segmentRecords * RECORD + HEADER > Integer.MAX_VALUE || maxSegments < 0) {
+            throw new IllegalArgumentException("Invalid segment budget");
+        }
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+        this.maxSegments = maxSegments;
+        Files.createDirectories(directory);
+        for (Path file : segmentFiles(directory)) {
+            Files.delete(file);
+            Files.deleteIfExists(keyframeFile(file));
+        }
+    }
+
+    // Appends a record of a step about to be taken by the machine
+    void record(TuringMachine machine, char read, char written, int move, boolean halts) {
+        State state = machine.getCurrentState();
+        if (program != machine.compile() || state != lastState) {
+            program = machine.compile();
+            lastState = state;
+            lastStateId = program.stateId(state);
+        }
+        if (segment == null || segmentCount == segmentRecords) {
+            roll(machine.getTape());
+        }
+        int offset = HEADER + segmentCount * RECORD;
+        segment.putLong(offset, machine.getTime());
+        segment.putInt(offset + 8, lastStateId);
+        segment.putInt(offset + 12, machine.getCurrentPosition());
+        segment.putChar(offset + 16, read);
+        segment.putChar(offset + 18, written);
+        segment.put(offset + 20, (byte) move);
+        segment.put(offset + 21, (byte) (halts ? HALT_FLAG : 0));
+        segmentCount++;
+        count++;
+        if (segmentCount % BATCH == 0) {
+            segment.putLong(COUNT_OFFSET, segmentCount);
+        }
+    }
+
+    // Finishes the current segment and maps a new one, starting with a keyframe of the tape, and deletes the oldest
+    // segment if there are too many
+    private void roll(Tape tape) {
+        try {
+            if (segment != null) {
+                segment.putLong(COUNT_OFFSET, segmentCount);
+            }
+            Path file = directory.resolve(String.format("%s%08d%s", PREFIX, segments.size() == 0 ? 0
+                    : segmentNumber(segments.get(segments.size() - 1)) + 1, SUFFIX));
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) segmentRecords * RECORD);
+            }
+            segmentFirst = count;
+            segmentCount = 0;
+            segment.putInt(0, MAGIC);
+            segment.putInt(4, VERSION);
+            segment.putInt(8, RECORD);
+            segment.putInt(12, segmentRecords);
+            segment.putLong(16, segmentFirst);
+            segment.putLong(COUNT_OFFSET, 0);
+            segments.add(file);
+            writeKeyframe(keyframeFile(file), tape);
+
+            if (maxSegments > 0 && segments.size() > maxSegments) {
+                Path oldest = segments.remove(0);
+                Files.delete(oldest);
+                Files.deleteIfExists(keyframeFile(oldest));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeKeyframe(Path file, Tape tape) throws IOException {
+        int length = tape.getLength();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer keyframe = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    KEYFRAME_HEADER + length * 2L);
+            keyframe.putInt(KEYFRAME_MAGIC);
+            keyframe.putInt(VERSION);
+            keyframe.putLong(segmentFirst);
+            keyframe.putInt(tape.getOrigin());
+            keyframe.putInt(length);
+            tape.putValues(keyframe.asCharBuffer());
+        }
+    }
+
+    private static Path keyframeFile(Path segment) {
+        String name = segment.getFileName().toString();
+        return segment.resolveSibling(name.substring(0, name.length() - SUFFIX.length()) + KEYFRAME_SUFFIX);
+    }
+
+    private static int segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    // Returns the segment files in the directory in order
+    private static ArrayList<Path> segmentFiles(Path directory) throws IOException {
+        ArrayList<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort((a, b) -> Integer.compare(segmentNumber(a), segmentNumber(b)));
+        return files;
+    }
+
+    // Brings the header count up to date and forces the current segment to disk
+    public void flush() {
+        if (segment != null) {
+            segment.putLong(COUNT_OFFSET, segmentCount);
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        segment = null;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    // Number of records written, including those in segments since deleted
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Reads a trace log, finding any record by its index and replaying the configuration of the machine before it
+     */
+    public static class Reader implements Closeable {
+
+        private final ArrayList<Path> files;
+        private final MappedByteBuffer[] segments;
+        private final long first;
+        private final long count;
+        private final int segmentRecords;
+
+        // Maps every segment of the log in the directory
+        public Reader(Path directory) throws IOException {
+            files = segmentFiles(directory);
+            segments = new MappedByteBuffer[files.size()];
+            int records = 0;
+            long first = 0;
+            long count = 0;
+            for (int i = 0; i < segments.length; i++) {
+                try (FileChannel channel = FileChannel.open(files.get(i), StandardOpenOption.READ)) {
+                    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+                MappedByteBuffer segment = segments[i];
+                if (segment.capacity() < HEADER || segment.getInt(0) != MAGIC) {
+                    throw new ProgramFormat.FormatException("Not a trace segment: " + files.get(i));
+                }
+                if (segment.getInt(4) != VERSION || segment.getInt(8) != RECORD) {
+                    throw new ProgramFormat.FormatException("Unsupported trace version");
+                }
+                if (i == 0) {
+                    records = segment.getInt(12);
+                    first = segment.getLong(16);
+                } else if (segment.getInt(12) != records || segment.getLong(16) != first + count) {
+                    throw new ProgramFormat.FormatException("Trace segments do not follow on: " + files.get(i));
+                }
+                long segmentCount = segment.getLong(COUNT_OFFSET);
+                if (segmentCount < 0 || segmentCount > records
+                        || HEADER + segmentCount * RECORD > segment.capacity()) {
+                    throw new ProgramFormat.FormatException("Bad record count in " + files.get(i));
+                }
+                if (i < segments.length - 1 && segmentCount != records) {
+                    throw new ProgramFormat.FormatException("Incomplete segment " + files.get(i));
+                }
+                count += segmentCount;
+            }
+            this.segmentRecords = records;
+            this.first = first;
+            this.count = count;
+        }
+
+        // Index of the first record still in the log, more than 0 if older segments were deleted
+        public long getFirst() {
+            return first;
+        }
+
+        // Index one past the last record
+        public long getEnd() {
+            return first + count;
+        }
+
+        private MappedByteBuffer segment(long index) {
+            if (index < first || index >= first + count) {
+                throw new IndexOutOfBoundsException("No record " + index + " in [" + first + ", " + getEnd() + ")");
+            }
+            return segments[(int) ((index - first) / segmentRecords)];
+        }
+
+        private int offset(long index) {
+            return HEADER + (int) ((index - first) % segmentRecords) * RECORD;
+        }
+
+        public long getTime(long index) {
+            return segment(index).getLong(offset(index));
+        }
+
+        public int getState(long index) {
+            return segment(index).getInt(offset(index) + 8);
+        }
+
+        public int getPosition(long index) {
+            return segment(index).getInt(offset(index) + 12);
+        }
+
+        public char getRead(long index) {
+            return segment(index).getChar(offset(index) + 16);
+        }
+
+        public char getWritten(long index) {
+            return segment(index).getChar(offset(index) + 18);
+        }
+
+        // Head move of the step, -1, 0 or 1
+        public int getMove(long index) {
+            return segment(index).get(offset(index) + 20);
+        }
+
+        public boolean isHalt(long index) {
+            return (segment(index).get(offset(index) + 21) & HALT_FLAG) != 0;
+        }
+
+        // Rebuilds the machine as it was before the step with the given index, on an array tape
+        public TuringMachine replay(long index, CompiledProgram program) throws IOException {
+            return replay(index, program, TapeBackend.ARRAY);
+        }
+
+        // Rebuilds the machine as it was before the step with the given index, on a tape with the given storage
+        // strategy, by applying the logged writes of its segment to the segment's keyframe
+        public TuringMachine replay(long index, CompiledProgram program, TapeBackend backend) throws IOException {
+            segment(index);
+            int number = (int) ((index - first) / segmentRecords);
+            long start = first + (long) number * segmentRecords;
+            Tape tape = readKeyframe(keyframeFile(files.get(number)), start, program, backend);
+            for (long i = start; i < index; i++) {
+                write(tape, getPosition(i), getWritten(i));
+            }
+            int position = getPosition(index);
+            cover(tape, position);
+
+            TuringMachine machine = new TuringMachine(program.getState(getState(index)), position, tape);
+            machine.setProgram(program);
+            machine.setTime(getTime(index));
+            return machine;
+        }
+
+        private static Tape readKeyframe(Path file, long start, CompiledProgram program, TapeBackend backend)
+                throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer keyframe = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (keyframe.capacity() < KEYFRAME_HEADER || keyframe.getInt() != KEYFRAME_MAGIC) {
+                    throw new ProgramFormat.FormatException("Not a trace keyframe: " + file);
+                }
+                if (keyframe.getInt() != VERSION || keyframe.getLong() != start) {
+                    throw new ProgramFormat.FormatException("Keyframe does not match its segment: " + file);
+                }
+                int origin = keyframe.getInt();
+                int length = keyframe.getInt();
+                if (length < 0 || keyframe.remaining() < length * 2L) {
+                    throw new ProgramFormat.FormatException("Truncated keyframe: " + file);
+                }
+                char[] cells = new char[length];
+                keyframe.asCharBuffer().get(cells);
+                return backend.create(cells, origin, program);
+            }
+        }
+
+        private static void write(Tape tape, int position, char symbol) {
+            cover(tape, position);
+            tape.write(position + tape.getOrigin(), symbol);
+        }
+
+        // Expands the tape until it holds the given position, as the run did when its head got there
+        private static void cover(Tape tape, int position) {
+            while (position + tape.getOrigin() < 0) {
+                tape.expandOnLeft();
+            }
+            while (position + tape.getOrigin() >= tape.getLength()) {
+                tape.expandOnRight();
+            }
+        }
+
+        @Override
+        public void close() {
+            Arrays.fill(segments, null);
+        }
+    }
+}
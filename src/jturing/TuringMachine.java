@@ -23,7 +23,7 @@
 
 package jturing;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Standard specification Turing machine with an instruction table, executing functions and a  time counter measure
@@ -32,11 +32,20 @@ public class TuringMachine {
 
     private State currentState;
     private int currentPosition;
-    private int displacementCounter;
-    private int time;
-    private ArrayList<char[]> history;
+    private long time;
+    private History history;
     private Tape tape;
     private Instruction[] instructions;
+    private CompiledProgram program;
+    private ExecutionMode executionMode = ExecutionMode.STANDARD;
+    private Profiler profiler;
+    private TapeRenderer renderer;
+    private Checkpointer checkpointer;
+    private BlockCache blockCache;
+    private TraceLog traceLog;
+    private LiveView liveView;
+    private boolean missingTransition; // Whether the machine halted because no instruction matched
+    private long cycleLength;
     private boolean halt;
     private Instruction currentInstruction;
 
@@ -48,9 +57,7 @@ public class TuringMachine {
         this.tape = tape;
         this.currentPosition = 0;
         this.time = 0;
-        this.history = new ArrayList<>();
         this.halt = false;
-        this.displacementCounter = 0;
     }
 
     public TuringMachine(State currentState, int currentPosition, Tape tape, Instruction[] instructions) {
@@ -59,30 +66,24 @@ public class TuringMachine {
         this.tape = tape;
         this.instructions = instructions;
         this.time = 0;
-        this.history = new ArrayList<>();
         this.halt = false;
-        this.displacementCounter = 0;
     }
 
     public TuringMachine(State currentState, int currentPosition, Tape tape) {
         this.currentState = currentState;
-        this.history = new ArrayList<>();
         this.time = 0;
         this.currentPosition = currentPosition;
         this.tape = tape;
         this.instructions = new Instruction[0];
-        this.displacementCounter = 0;
         this.halt = false;
     }
 
     public TuringMachine(State currentState, Tape tape) {
         this.currentState = currentState;
-        this.history = new ArrayList<>();
         this.tape = tape;
         this.instructions = new Instruction[0];
         this.currentPosition = 0;
         this.time = 0;
-        this.displacementCounter = 0;
         this.halt = false;
     }
 
@@ -91,128 +92,412 @@ public class TuringMachine {
         this.instructions = new Instruction[0];
         this.currentPosition = 0;
         this.time = 0;
-        this.history = new ArrayList<>();
-        this.tape = new Tape(new char[0]);
-        this.displacementCounter = 0;
+        this.tape = new ArrayTape(new char[0]);
         this.halt = false;
     }
 
+    // Compiles the instruction set into a dense transition table, reusing the last compilation until the
+    // instructions are replaced
+    public CompiledProgram compile() {
+        if (program == null) {
+            program = CompiledProgram.compile(instructions);
+        }
+        return program;
+    }
+
     // Tries to find a corresponding instruction in the quintuple set for a given state and value
     public Instruction getInstruction(State state, char val) throws Instruction.InstructionNotFoundException {
-        Instruction inst = null;
-        for (int i = 0; i < instructions.length; i++) {
-            if (instructions[i].getOldState().equals(state) && instructions[i].getGivenSymbol() == val) {
-                inst = instructions[i];
-            }
-        }
-        if (inst == null)  {
+        CompiledProgram program = compile();
+        int transition = program.transition(program.stateId(state), val);
+        if (transition < 0)  {
             halt = true;
             throw new Instruction.InstructionNotFoundException(state, val);
         }
-        return inst;
+        return program.getInstruction(transition);
     }
 
     // Executes a given instruction via the Turing Machine
     public void executeInstruction(Instruction instruction) {
+        int move = instruction.getDirection() == HeadDirection.L ? -1
+                : instruction.getDirection() == HeadDirection.R ? 1 : 0;
+        execute(instruction, instruction.getWriteSymbol(), move, instruction.getNewState(), instruction.isHalt(),
+                instruction.getSteps());
+    }
+
+    // Executes the transition at the given index of the compiled table
+    private void executeTransition(CompiledProgram program, int transition) {
+        execute(program.getInstruction(transition), program.getWriteSymbol(transition), program.getMove(transition),
+                program.getNewState(transition), program.isHalt(transition), program.getSteps(transition));
+    }
+
+    private void execute(Instruction instruction, char writeSymbol, int move, State newState, boolean halts,
+                         int steps) {
+        int index = currentPosition + tape.getOrigin();
+
+        // Journal what this step is about to overwrite
+        if (history != null) {
+            int expansion = 0;
+            if (move < 0 && !halt && index == 0) expansion = -1;
+            else if (move > 0 && !halt && index == tape.getLength() - 1) expansion = 1;
+            history.record(this, tape.getValue(index), expansion, steps);
+        }
+        if (traceLog != null) {
+            traceLog.record(this, tape.getValue(index), writeSymbol, move, halts);
+        }
 
         this.currentInstruction = instruction;
 
         // Write appropriate symbol to current position
-        tape.write(currentPosition + displacementCounter, instruction.getWriteSymbol());
+        tape.write(index, writeSymbol);
 
         // Move the reader head
-        if (instruction.getDirection() == HeadDirection.L && !halt) {
+        if (move < 0 && !halt) {
 
             // Check if position is in bounds and expand if necessary
-            if (currentPosition + displacementCounter == 0) {
+            if (index == 0) {
+                // The tape shifts its origin, so positional values stay relative despite leftward expansion
                 tape.expandOnLeft();
-
-                // Add one to displacementCounter to keep positional values relative despite leftward expansion
-                displacementCounter++;
             }
             currentPosition--;
         }
-        else if (instruction.getDirection() == HeadDirection.R && !halt) {
+        else if (move > 0 && !halt) {
             // Check if position is in bounds and expand if necessary
-            if (currentPosition + displacementCounter == tape.getLength() - 1) {
+            if (index == tape.getLength() - 1) {
                 tape.expandOnRight();
             }
             currentPosition++;
         }
 
         // Change state
-        currentState = instruction.getNewState();
+        currentState = newState;
 
-        time++;
+        // Folded transitions stand for several steps
+        time += steps;
 
-        if (instruction.isHalt()) {
+        if (halts) {
             halt = true;
         }
-
-        // Add the current tape to the history
-        history.add(tape.getValues());
     }
 
     public void step() {
         try {
-            executeInstruction(getInstruction(currentState, tape.getValue(currentPosition + displacementCounter)));
+            executeInstruction(getInstruction(currentState, tape.getValue(currentPosition + tape.getOrigin())));
         } catch (Instruction.InstructionNotFoundException e) {
             e.printStackTrace();
-        }    }
+        }
+    }
 
+    // Reverts the most recent step using the history journal
     public void stepBack() {
-        this.setTape(new Tape(getHistory().get(time)));
-        history.remove(history.size());
-        time--;
+        if (history == null || !history.undo(this)) {
+            throw new IllegalStateException("No recorded history to step back through");
+        }
     }
 
+    // Moves the machine to the given time, undoing steps through the journal or replaying from the nearest
+    // checkpoint, whichever is shorter, or running forward if the time is still ahead
+    public void seek(long time) {
+        if (time < 0) {
+            throw new IllegalArgumentException("Time cannot be negative: " + time);
+        }
+        if (time < this.time) {
+            boolean undoable = history != null && history.getJournalSize() > 0 && history.getEarliestTime() <= time;
+            History.Checkpoint checkpoint = history == null ? null : history.getCheckpoint(time);
+            if (checkpoint != null && (!undoable || time - checkpoint.getTime() < this.time - time)) {
+                history.restore(this, checkpoint);
+            } else if (!undoable) {
+                throw new IllegalStateException("Time " + time + " is no longer recorded in the history");
+            }
+            while (this.time > time) {
+                stepBack();
+            }
+        }
+        while (this.time < time && !halt) {
+            step();
+        }
+    }
 
     // Loops through the tape executing the appropriate instructions until the machine halts
-    public void run() {
+    public RunOutcome run() {
+        return run(new RunOptions());
+    }
+
+    // Runs until the machine halts or hits a missing transition, or the options end the run early. Steps are
+    // executed in chunks of the options' check interval, between which the budget, deadline and cancellation are
+    // checked, so none of them costs anything per step
+    public RunOutcome run(RunOptions options) {
+        CompiledProgram program = compile();
+        if (!halt) {
+            missingTransition = false;
+        }
+        cycleLength = 0;
+        if (executionMode == ExecutionMode.NONDETERMINISTIC) {
+            return halt ? (missingTransition ? RunOutcome.MISSING_TRANSITION : RunOutcome.HALTED)
+                    : runNondeterministic(program, options);
+        }
+
+        long deadline = options.getTimeout() == null ? 0 : System.nanoTime() + options.getTimeout().toNanos();
+        CycleDetector detector = options.isCycleDetection() && !halt
+                ? new CycleDetector(tape, program.stateId(currentState), currentPosition) : null;
+        if (profiler != null) {
+            profiler.begin(program);
+            profiler.countPosition(currentPosition);
+        }
+        if (checkpointer != null) {
+            checkpointer.begin(this);
+        }
+        if (liveView != null) {
+            liveView.begin(this);
+        }
+
+        boolean recorded = history != null || traceLog != null;
+        RunOutcome outcome = null;
+        long remaining = options.getMaxSteps();
         while (!halt) {
-            try {
-                executeInstruction(getInstruction(currentState, tape.getValue(currentPosition + displacementCounter)));
-            } catch (Instruction.InstructionNotFoundException e) {
-                e.printStackTrace();
+            if (remaining <= 0) {
+                outcome = RunOutcome.BUDGET_EXHAUSTED;
+                break;
             }
+
+            int chunk = (int) Math.min(remaining, options.getCheckInterval());
+            if (checkpointer != null) {
+                chunk = (int) Math.min(chunk, checkpointer.stepsUntilDue(this));
+            }
+            if (liveView != null) {
+                chunk = Math.min(chunk, liveView.stepsUntilDue(this));
+            }
+            long start = time;
+            if (profiler != null || detector != null) {
+                runInstrumented(program, chunk, detector);
+            } else if (executionMode == ExecutionMode.ACCELERATED && !recorded) {
+                // Sweeps and generated code skip the per-step journal and trace, so a recorded run always goes step
+                // by step
+                runAccelerated(program, chunk);
+            } else if (executionMode == ExecutionMode.JIT && !recorded) {
+                runJit(program, chunk);
+            } else if (executionMode == ExecutionMode.MEMOIZED && !recorded) {
+                runMemoized(program, chunk);
+            } else {
+                runStandard(program, chunk);
+            }
+            remaining -= time - start;
+            if (checkpointer != null) {
+                checkpointer.poll(this);
+            }
+            if (liveView != null) {
+                liveView.poll(this);
+            }
+
+            if (detector != null && detector.getCycleLength() > 0) {
+                cycleLength = detector.getCycleLength();
+                outcome = RunOutcome.CYCLE_DETECTED;
+                break;
+            }
+            if (halt) break;
+            if (options.getCancellation() != null && options.getCancellation().getAsBoolean()) {
+                outcome = RunOutcome.CANCELLED;
+                break;
+            }
+            if (deadline != 0 && System.nanoTime() - deadline >= 0) {
+                outcome = RunOutcome.BUDGET_EXHAUSTED;
+                break;
+            }
+        }
+
+        if (profiler != null) {
+            profiler.end();
         }
+        if (liveView != null) {
+            liveView.end(this);
+        }
+        if (outcome == null) {
+            outcome = missingTransition ? RunOutcome.MISSING_TRANSITION : RunOutcome.HALTED;
+        }
+        return outcome;
     }
 
-    public void printTape() {
-        System.out.print("\n|");
+    // Explores every branch of the program and, if one halts, moves the machine into the configuration that branch
+    // halted in. Runs that end any other way leave the machine as it was, except that it halts when no branch can
+    private RunOutcome runNondeterministic(CompiledProgram program, RunOptions options) {
+        NondeterministicExplorer.Result result;
+        try {
+            result = new NondeterministicExplorer(program).explore(currentState, tape, currentPosition, options);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return RunOutcome.CANCELLED;
+        }
 
-        // Print out tape values between vertical bars
-        for (int i = 0; i < tape.getLength(); i++) {
-            System.out.print(tape.getValue(i));
-            System.out.print('|');
+        if (result.getOutcome() == RunOutcome.HALTED) {
+            char[] cells = result.getTape();
+            int from = Math.min(-tape.getOrigin(), Math.min(result.getTapeOrigin(), result.getPosition()));
+            int to = Math.max(tape.getLength() - tape.getOrigin(),
+                    Math.max(result.getTapeOrigin() + cells.length, result.getPosition() + 1));
+            char[] values = new char[to - from];
+            Arrays.fill(values, Tape.BLANK);
+            System.arraycopy(cells, 0, values, result.getTapeOrigin() - from, cells.length);
+            tape = new ArrayTape(values, -from);
+            currentPosition = result.getPosition();
+            currentInstruction = program.getInstruction(result.getTransition());
+            currentState = program.getNewState(result.getTransition());
+            time += result.getSteps();
+            halt = true;
+        } else if (result.getOutcome() == RunOutcome.MISSING_TRANSITION) {
+            halt = true;
+            missingTransition = true;
         }
-        System.out.println();
+        return result.getOutcome();
+    }
 
-        // Align and print position indicator
-        for (int i = 0; i < ((currentPosition + displacementCounter) * 2) + 1; i++) {
-            System.out.print(' ');
+    // Executes at most the given number of steps, one table lookup each
+    private void runStandard(CompiledProgram program, int steps) {
+        int state = program.stateId(currentState);
+        long end = time + steps;
+        while (!halt && end - time > 0) {
+            state = step(program, state);
         }
-        System.out.print('^');
+    }
 
-        // Print information about the state of the Turing Machine
-        System.out.println("\ncurrentState = " + currentState.getName());
-        if (!halt) {
-            System.out.println("direction = " + currentInstruction.getDirection());
+    // Same as the standard loop, but feeding the profiler's counters and the cycle detector, either of which may
+    // be null
+    private void runInstrumented(CompiledProgram program, int steps, CycleDetector detector) {
+        Profiler profiler = this.profiler;
+        int state = program.stateId(currentState);
+        long end = time + steps;
+        while (!halt && end - time > 0) {
+            int origin = tape.getOrigin();
+            int length = tape.getLength();
+            char symbol = tape.getValue(currentPosition + origin);
+            int transition = program.transition(state, symbol);
+            if (transition < 0) {
+                state = step(program, state);
+                continue;
+            }
+
+            if (detector != null) {
+                detector.write(currentPosition, symbol, program.getWriteSymbol(transition));
+            }
+            executeTransition(program, transition);
+            state = program.getNextState(transition);
+
+            if (profiler != null) {
+                profiler.countTransition(transition);
+                if (tape.getLength() != length) {
+                    profiler.countExpansion(tape.getOrigin() != origin);
+                }
+                profiler.countPosition(currentPosition);
+            }
+            if (detector != null && !halt && detector.step(tape, state, currentPosition)) {
+                return;
+            }
+        }
+    }
+
+    // Same as the standard loop, except that self-looping transitions are applied to the whole stretch of tape
+    // they cover in one tape operation, counting one step per cell
+    private void runAccelerated(CompiledProgram program, int steps) {
+        int state = program.stateId(currentState);
+        long end = time + steps;
+        while (!halt && end - time > 0) {
+            int index = currentPosition + tape.getOrigin();
+            int transition = program.transition(state, tape.getValue(index));
+            CompiledProgram.Sweep sweep = transition < 0 ? null : program.getSweep(transition);
+            if (sweep != null) {
+                int count = tape.sweep(index, sweep.getMove(), sweep.loops, sweep.rewrite, (int) (end - time));
+                if (count > 0) {
+                    currentInstruction = program.getInstruction(transition);
+                    currentPosition += count * sweep.getMove();
+                    time += count;
+                    continue;
+                }
+            }
+            state = step(program, state);
+        }
+    }
+
+    // Runs the program's generated class, handing over to the table for anything it stops on short of halting
+    private void runJit(CompiledProgram program, int steps) {
+        JitProgram jit = JitCompiler.compile(program);
+        int state = program.stateId(currentState);
+        long end = time + steps;
+        while (!halt && end - time > 0) {
+            if (jit == null || state < 0) {
+                state = step(program, state);
+                continue;
+            }
+
+            JitFrame frame = new JitFrame(tape, currentPosition + tape.getOrigin());
+            int reason = jit.run(frame, state, (int) (end - time));
+            time += frame.steps;
+            currentPosition = frame.index - tape.getOrigin();
+            if (frame.lastTransition >= 0) {
+                currentState = program.getNewState(frame.lastTransition);
+                currentInstruction = program.getInstruction(frame.lastTransition);
+            }
+            state = frame.state;
+
+            if (reason == JitProgram.HALTED) {
+                halt = true;
+            } else if (reason == JitProgram.MISSING_TRANSITION) {
+                state = step(program, state);
+            }
         }
-        System.out.println("time = " + time);
-        // System.out.println("currentPosition = " + (currentPosition + displacementCounter));
+    }
 
-        System.out.print("=============================================");
+    // Same as the standard loop, except that traversals of a block of tape the cache has seen before are applied in
+    // one go
+    private void runMemoized(CompiledProgram program, int steps) {
+        if (blockCache == null) {
+            blockCache = new BlockCache();
+        }
+        int state = program.stateId(currentState);
+        long end = time + steps;
+        while (!halt && end - time > 0) {
+            int next = state < 0 ? -1 : blockCache.apply(this, program, state, (int) (end - time));
+            state = next >= 0 ? next : step(program, state);
+        }
+    }
+
+    // Executes the transition for the given state id and the symbol under the head, returning the next state id.
+    // A missing transition halts the machine, as it always has, and is remembered for the run's outcome
+    private int step(CompiledProgram program, int state) {
+        int transition = program.transition(state, tape.getValue(currentPosition + tape.getOrigin()));
+        if (transition < 0) {
+            halt = true;
+            missingTransition = true;
+            return state;
+        }
+        executeTransition(program, transition);
+        return program.getNextState(transition);
+    }
+
+    public void printTape() {
+        StringBuilder frame = new StringBuilder();
+        TapeRenderer.appendFrame(frame, this, 0);
+        System.out.print(frame);
     }
 
-    // Executes the instruction set and prints the tape between steps
+    // Runs the machine until it halts, drawing frames through the renderer. Without a renderer of its own the machine
+    // draws every step in full, as printTape does
     public void runPrint() {
-        while (!halt) {
-            try {
-                executeInstruction(getInstruction(currentState, tape.getValue(currentPosition + displacementCounter)));
-                printTape();
-            } catch (Instruction.InstructionNotFoundException e) {
-                e.printStackTrace();
+        TapeRenderer renderer = this.renderer;
+        if (renderer == null) {
+            renderer = new TapeRenderer();
+            renderer.setWindow(0);
+        }
+        try {
+            while (!halt) {
+                try {
+                    executeInstruction(getInstruction(currentState, tape.getValue(currentPosition + tape.getOrigin())));
+                    renderer.step(this);
+                } catch (Instruction.InstructionNotFoundException e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            if (renderer == this.renderer) {
+                renderer.flush();
+            } else {
+                renderer.close();
             }
         }
     }
@@ -220,11 +505,24 @@ public class TuringMachine {
     // Getters and setters
 
     public Instruction[] getInstructions() {
+        if (instructions == null) {
+            instructions = new Instruction[program.getTransitionCount()];
+            for (int i = 0; i < instructions.length; i++) {
+                instructions[i] = program.getInstruction(i);
+            }
+        }
         return instructions;
     }
 
     public void setInstructions(Instruction[] instructions) {
         this.instructions = instructions;
+        this.program = null;
+    }
+
+    // Runs a program compiled or loaded elsewhere, building its instruction objects only if they are asked for
+    public void setProgram(CompiledProgram program) {
+        this.program = program;
+        this.instructions = null;
     }
 
     public int getCurrentPosition() {
@@ -235,19 +533,20 @@ public class TuringMachine {
         this.currentPosition = currentPosition;
     }
 
-    public int getTime() {
+    public long getTime() {
         return time;
     }
 
-    public void setTime(int time) {
+    public void setTime(long time) {
         this.time = time;
     }
 
-    public ArrayList<char[]> getHistory() {
+    public History getHistory() {
         return history;
     }
 
-    public void setHistory(ArrayList<char[]> history) {
+    // Starts recording steps into the given history, or stops recording if it is null
+    public void setHistory(History history) {
         this.history = history;
     }
 
@@ -259,6 +558,11 @@ public class TuringMachine {
         this.tape = tape;
     }
 
+    // Moves the current tape contents to a tape with the given storage strategy, keeping the head where it is
+    public void setTapeBackend(TapeBackend backend) {
+        this.tape = backend.create(tape.getValues(), tape.getOrigin(), compile());
+    }
+
     public State getCurrentState() {
         return currentState;
     }
@@ -267,6 +571,91 @@ public class TuringMachine {
         this.currentState = currentState;
     }
 
+    public Instruction getCurrentInstruction() {
+        return currentInstruction;
+    }
+
+    public void setCurrentInstruction(Instruction currentInstruction) {
+        this.currentInstruction = currentInstruction;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
+    // Runs with the given profiler counting every step, or without instrumentation if it is null
+    public void setProfiler(Profiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public TapeRenderer getRenderer() {
+        return renderer;
+    }
+
+    // Renderer used by runPrint, or null to draw every step of the whole tape
+    public void setRenderer(TapeRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    public LiveView getLiveView() {
+        return liveView;
+    }
+
+    // View that run publishes snapshots to for other threads to watch, or null for none
+    public void setLiveView(LiveView liveView) {
+        this.liveView = liveView;
+    }
+
+    public TraceLog getTraceLog() {
+        return traceLog;
+    }
+
+    // Logs every step to the given trace, or stops logging if it is null
+    public void setTraceLog(TraceLog traceLog) {
+        this.traceLog = traceLog;
+    }
+
+    public BlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    // Cache used by the MEMOIZED mode; a default one is made on the first memoized run if none is set
+    public void setBlockCache(BlockCache blockCache) {
+        this.blockCache = blockCache;
+    }
+
+    public Checkpointer getCheckpointer() {
+        return checkpointer;
+    }
+
+    // Checkpointer that snapshots the machine on its schedule during run, or null for no snapshots
+    public void setCheckpointer(Checkpointer checkpointer) {
+        this.checkpointer = checkpointer;
+    }
+
+    // Returns the number of steps after which the configuration repeats, if the last run ended with
+    // CYCLE_DETECTED, or 0 otherwise
+    public long getCycleLength() {
+        return cycleLength;
+    }
+
+    // Whether the machine halted because no instruction matched rather than on a halting instruction
+    public boolean isMissingTransition() {
+        return missingTransition;
+    }
+
+    void setMissingTransition(boolean missingTransition) {
+        this.missingTransition = missingTransition;
+    }
+
     public boolean isHalt() {
         return halt;
     }
@@ -128,4 +128,26 @@ public class TuringMachinePresets {
             });
         }
     }
+
+    // Two-tape unary adder for tapes of format '*''1'*'+''1'*'=': copies every '1' to the second tape in one pass, then
+    // copies them back after the equals, adding in linear time where UnaryAdder takes quadratic time
+    public static class TwoTapeUnaryAdder extends MultiTapeMachine {
+        public TwoTapeUnaryAdder(Tape tape) {
+            super(new State("Scan"), tape, new ArrayTape(new char[]{Tape.BLANK}));
+
+            State scan = new State("Scan");
+            State copy = new State("Copy");
+            State halt = new State("Halt");
+
+            setInstructions(new MultiTapeInstruction[]{
+                    new MultiTapeInstruction(scan, "*-", scan, "*-", "RC", false),
+                    new MultiTapeInstruction(scan, "1-", scan, "11", "RR", false),
+                    new MultiTapeInstruction(scan, "+-", scan, "+-", "RC", false),
+                    new MultiTapeInstruction(scan, "=-", copy, "=-", "RL", false),
+
+                    new MultiTapeInstruction(copy, "-1", copy, "11", "RL", false),
+                    new MultiTapeInstruction(copy, "--", halt, "--", "CC", true)
+            });
+        }
+    }
 }
@@ -22,17 +22,433 @@
 
 package jturing;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 public class TuringMachineTest {
 
     public static void main(String[] args) {
 
         // Test of the Unary Adder machine
-        Tape input = new Tape(new char[] {
+        Tape input = new ArrayTape(new char[] {
                 '*', '1', '1',  '+', '1', '1', '1', '1', '1', '='
         });
         TuringMachinePresets.UnaryAdder unaryAdder = new TuringMachinePresets.UnaryAdder(input);
         unaryAdder.runPrint();
 
+        // Every run of an ambiguous nondeterministic machine must halt in the same configuration
+        nondeterministicRunsAgree();
+
+        // Seeking must land on the right configuration after the checkpoints have been thinned out
+        historySeeksAcrossThinning();
+
+        // Stepping back from a missing transition must leave a machine that can run on
+        stepBackClearsMissingTransition();
+
+        // Generated code must leave every run where the standard loop does
+        modesAgree(ExecutionMode.JIT);
+
+        // Sweeping over runs of a symbol in one step must leave every run where the standard loop does
+        modesAgree(ExecutionMode.ACCELERATED);
+
+        // Replaying cached blocks must leave every run where the standard loop does
+        modesAgree(ExecutionMode.MEMOIZED);
+
+        // An optimized program must end every run where the original does
+        optimizedProgramsAgree();
+
+        // Rerunning an edited input must end where a run from scratch does
+        incrementalRunsAgree();
+
+        // Programs must come back unchanged from the text and binary formats
+        programFormatsRoundTrip();
+    }
+
+    // Branches over eight cells so that 256 configurations halt in the same level, spread over several chunks, and
+    // checks that the explorer always picks the same one
+    private static void nondeterministicRunsAgree() {
+        State[] states = new State[10];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = new State("q" + i);
+        }
+        Instruction[] instructions = new Instruction[17];
+        for (int i = 0; i < 8; i++) {
+            instructions[2 * i] = new Instruction(states[i], '-', states[i + 1], '0', HeadDirection.R, false);
+            instructions[2 * i + 1] = new Instruction(states[i], '-', states[i + 1], '1', HeadDirection.R, false);
+        }
+        instructions[16] = new Instruction(states[8], '-', states[9], '-', HeadDirection.C, true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            String first = null;
+            for (int run = 0; run < 50; run++) {
+                NondeterministicExplorer explorer = new NondeterministicExplorer(CompiledProgram.compile(instructions),
+                        executor);
+                NondeterministicExplorer.Result result = explorer.explore(states[0], new ArrayTape(new char[]{'-'}),
+                        0, new RunOptions());
+                String configuration = result.getOutcome() + " " + new String(result.getTape()) + " "
+                        + result.getPosition() + " " + result.getSteps();
+                if (first == null) {
+                    first = configuration;
+                } else if (!first.equals(configuration)) {
+                    throw new AssertionError("Nondeterministic runs differ: " + first + " / " + configuration);
+                }
+            }
+            System.out.println("\nNondeterministic runs agree: " + first);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // Counts in binary for 300 steps with a checkpoint every 10 steps and room for four, so that the checkpoints are
+    // thinned out three times, then checks that they are still evenly spaced and that seeking back matches a fresh run
+    private static void historySeeksAcrossThinning() {
+        TuringMachine machine = binaryCounter();
+        History history = new History(0, 10, 4);
+        machine.setHistory(history);
+        RunOptions options = new RunOptions();
+        options.setMaxSteps(300);
+        machine.run(options);
+
+        int interval = history.getCheckpointInterval();
+        for (int time = 0; time <= machine.getTime(); time++) {
+            if (history.getCheckpoint(time).getTime() != time / interval * interval) {
+                throw new AssertionError("Checkpoint before " + time + " is at " + history.getCheckpoint(time).getTime()
+                        + " with an interval of " + interval);
+            }
+        }
+
+        for (int time = 300; time >= 0; time -= 7) {
+            machine.seek(time);
+            TuringMachine expected = binaryCounter();
+            options.setMaxSteps(time);
+            expected.run(options);
+            String actualConfiguration = configuration(machine);
+            String expectedConfiguration = configuration(expected);
+            if (!actualConfiguration.equals(expectedConfiguration)) {
+                throw new AssertionError("Seek to " + time + " gave " + actualConfiguration + " instead of "
+                        + expectedConfiguration);
+            }
+        }
+        System.out.println("History seeks across thinning: " + history.getCheckpointCount() + " checkpoints every "
+                + interval + " steps");
+    }
+
+    private static TuringMachine binaryCounter() {
+        State increment = new State("increment");
+        State back = new State("back");
+        TuringMachine machine = new TuringMachine(increment, new ArrayTape(new char[] {'-'}));
+        machine.setProgram(CompiledProgram.compile(new Instruction[] {
+                new Instruction(increment, '1', increment, '0', HeadDirection.L, false),
+                new Instruction(increment, '0', back, '1', HeadDirection.R, false),
+                new Instruction(increment, '-', back, '1', HeadDirection.R, false),
+                new Instruction(back, '0', back, '0', HeadDirection.R, false),
+                new Instruction(back, '1', back, '1', HeadDirection.R, false),
+                new Instruction(back, '-', increment, '-', HeadDirection.L, false)
+        }));
+        return machine;
+    }
+
+    private static String configuration(TuringMachine machine) {
+        return machine.getTime() + " " + machine.getCurrentState().getName() + " " + machine.getCurrentPosition() + " "
+                + new String(machine.getTape().getValues()).replace("-", " ").strip();
+    }
+
+    // Runs the binary counter into a missing transition by taking out its carry into blank tape, then steps back
+    private static void stepBackClearsMissingTransition() {
+        State increment = new State("increment");
+        State back = new State("back");
+        TuringMachine machine = new TuringMachine(increment, new ArrayTape(new char[] {'1', '1'}));
+        machine.setCurrentPosition(1);
+        machine.setProgram(CompiledProgram.compile(new Instruction[] {
+                new Instruction(increment, '1', increment, '0', HeadDirection.L, false),
+                new Instruction(increment, '0', back, '1', HeadDirection.R, false)
+        }));
+        machine.setHistory(new History(16));
+        RunOutcome outcome = machine.run();
+        machine.stepBack();
+        if (outcome != RunOutcome.MISSING_TRANSITION || machine.isHalt() || machine.isMissingTransition()
+                || machine.getTime() != 1) {
+            throw new AssertionError("Stepped back from " + outcome + " to halt " + machine.isHalt()
+                    + ", missing transition " + machine.isMissingTransition() + " at time " + machine.getTime());
+        }
+        System.out.println("Step back clears the missing transition");
+    }
+
+    // Runs the presets, a sweep cut off half way and a seeded set of random programs in the given mode and in the
+    // standard loop, and checks that each pair of runs ends with the same outcome, time, state, position and tape
+    private static void modesAgree(ExecutionMode mode) {
+        int[] outcomes = new int[RunOutcome.values().length];
+        RunOptions options = new RunOptions();
+        options.setCheckInterval(64);
+        options.setMaxSteps(1000);
+        outcomes[runsAgree(mode, options, () -> new TuringMachinePresets.ParityMachine(
+                Tape.of("0110100111010*".toCharArray()))).ordinal()]++;
+        outcomes[runsAgree(mode, options, () -> new TuringMachinePresets.BitFlipper(
+                Tape.of("*0110100111010*".toCharArray()))).ordinal()]++;
+        outcomes[runsAgree(mode, options, () -> new TuringMachinePresets.UnaryAdder(
+                Tape.of("*11+11111=".toCharArray()))).ordinal()]++;
+
+        // The budget runs out in the middle of a 1000 cell sweep, which is also in the middle of a chunk
+        char[] ones = new char[1000];
+        Arrays.fill(ones, '1');
+        State sweep = new State("sweep");
+        Instruction[] sweepRight = {
+                new Instruction(sweep, '1', sweep, '1', HeadDirection.R, false),
+                new Instruction(sweep, '-', sweep, '-', HeadDirection.C, true)
+        };
+        options.setMaxSteps(517);
+        outcomes[runsAgree(mode, options, () -> new TuringMachine(sweep, sweepRight, Tape.of(ones))).ordinal()]++;
+
+        Random random = new Random(42);
+        for (int run = 0; run < 2000; run++) {
+            State[] states = randomStates(random);
+            Instruction[] instructions = randomProgram(random, states);
+            char[] input = randomInput(random);
+            int position = random.nextInt(input.length);
+            options.setCheckInterval(1 + random.nextInt(100));
+            options.setMaxSteps(1 + random.nextInt(3000));
+            outcomes[runsAgree(mode, options, () -> new TuringMachine(states[0], position, Tape.of(input),
+                    instructions)).ordinal()]++;
+        }
+        if (outcomes[RunOutcome.MISSING_TRANSITION.ordinal()] == 0
+                || outcomes[RunOutcome.BUDGET_EXHAUSTED.ordinal()] == 0 || outcomes[RunOutcome.HALTED.ordinal()] == 0) {
+            throw new AssertionError("Runs in " + mode + " did not end in every way: "
+                    + Arrays.toString(outcomes));
+        }
+        System.out.println(mode + " runs agree with the standard loop: " + outcomes[RunOutcome.HALTED.ordinal()]
+                + " halted, " + outcomes[RunOutcome.MISSING_TRANSITION.ordinal()] + " missed a transition, "
+                + outcomes[RunOutcome.BUDGET_EXHAUSTED.ordinal()] + " ran out of steps");
+    }
+
+    private static RunOutcome runsAgree(ExecutionMode mode, RunOptions options, Supplier<TuringMachine> machines) {
+        TuringMachine expected = machines.get();
+        RunOutcome expectedOutcome = expected.run(options);
+        TuringMachine actual = machines.get();
+        actual.setExecutionMode(mode);
+        RunOutcome actualOutcome = actual.run(options);
+        String expectedConfiguration = expectedOutcome + " " + exactConfiguration(expected);
+        String actualConfiguration = actualOutcome + " " + exactConfiguration(actual);
+        if (!actualConfiguration.equals(expectedConfiguration)) {
+            throw new AssertionError(mode + " run ended in " + actualConfiguration + " instead of "
+                    + expectedConfiguration);
+        }
+        return expectedOutcome;
+    }
+
+    // Unlike configuration, keeps the blank cells and the origin so that a run which grew the tape differently shows
+    private static String exactConfiguration(TuringMachine machine) {
+        return machine.getTime() + " " + machine.getCurrentState().getName() + " " + machine.getCurrentPosition() + " "
+                + machine.getTape().getOrigin() + " " + new String(machine.getTape().getValues());
+    }
+
+    // Optimizes seeded random programs and runs both versions over random inputs. Runs that use up their budget are
+    // left out, since a folded transition is allowed to overshoot it; merged states also lose their names, so only
+    // the outcome, time, position and tape are compared
+    private static void optimizedProgramsAgree() {
+        Random random = new Random(18);
+        RunOptions options = new RunOptions();
+        options.setMaxSteps(3000);
+        int compared = 0;
+        int folded = 0;
+        for (int run = 0; run < 3000; run++) {
+            State[] states = randomStates(random);
+            Instruction[] instructions = randomProgram(random, states);
+            Instruction[] optimized = ProgramOptimizer.optimize(instructions, states[0]);
+            char[] input = randomInput(random);
+            int position = random.nextInt(input.length);
+
+            TuringMachine expected = new TuringMachine(states[0], position, Tape.of(input), instructions);
+            RunOutcome expectedOutcome = expected.run(options);
+            if (expectedOutcome == RunOutcome.BUDGET_EXHAUSTED) {
+                continue;
+            }
+            TuringMachine actual = new TuringMachine(states[0], position, Tape.of(input), optimized);
+            RunOutcome actualOutcome = actual.run(options);
+            String expectedRun = expectedOutcome + " " + expected.getTime() + " " + expected.getCurrentPosition() + " "
+                    + expected.getTape().getOrigin() + " " + new String(expected.getTape().getValues());
+            String actualRun = actualOutcome + " " + actual.getTime() + " " + actual.getCurrentPosition() + " "
+                    + actual.getTape().getOrigin() + " " + new String(actual.getTape().getValues());
+            if (!actualRun.equals(expectedRun)) {
+                throw new AssertionError("Optimized program ended in " + actualRun + " instead of " + expectedRun
+                        + ": " + Arrays.toString(optimized));
+            }
+            compared++;
+            for (Instruction instruction : optimized) {
+                if (instruction.getSteps() > 1) {
+                    folded++;
+                    break;
+                }
+            }
+        }
+        if (folded == 0) {
+            throw new AssertionError("No optimized program folded a chain");
+        }
+        System.out.println("Optimized programs agree: " + compared + " runs, " + folded + " with folded chains");
+    }
+
+    // Feeds one incremental runner a series of edits to a random input, some of which grow or shrink it, with small
+    // checkpoint budgets so that the checkpoints get thinned out, and compares every run with a fresh runner's
+    private static void incrementalRunsAgree() {
+        Random random = new Random(22);
+        int runs = 0;
+        int resumed = 0;
+        for (int program = 0; program < 300; program++) {
+            State[] states = randomStates(random);
+            CompiledProgram compiled = CompiledProgram.compile(randomProgram(random, states));
+            IncrementalRunner runner = new IncrementalRunner(compiled, states[0], 1 + random.nextInt(50),
+                    2 + random.nextInt(10));
+            char[] input = randomInput(random);
+            for (int edit = 0; edit < 20; edit++) {
+                input = randomEdit(random, input);
+                long maxSteps = 1 + random.nextInt(2000);
+                IncrementalRunner fresh = new IncrementalRunner(compiled, states[0]);
+                String expected = fresh.run(input, maxSteps) + " " + incrementalConfiguration(fresh);
+                String actual = runner.run(input, maxSteps) + " " + incrementalConfiguration(runner);
+                if (!actual.equals(expected)) {
+                    throw new AssertionError("Incremental run over " + new String(input) + " ended in " + actual
+                            + " instead of " + expected);
+                }
+                runs++;
+                if (runner.getResumedFrom() > 0) {
+                    resumed++;
+                }
+            }
+        }
+        System.out.println("Incremental runs agree: " + runs + " runs, " + resumed + " resumed from a checkpoint");
+    }
+
+    private static String incrementalConfiguration(IncrementalRunner runner) {
+        return runner.getTime() + " " + runner.getState().getName() + " " + runner.getPosition() + " "
+                + runner.getTape().getOrigin() + " " + new String(runner.getTape().getValues());
+    }
+
+    // Changes a few cells, or grows or shrinks the input at its right end
+    private static char[] randomEdit(Random random, char[] input) {
+        int kind = random.nextInt(3);
+        if (kind == 0) {
+            char[] edited = input.clone();
+            for (int i = random.nextInt(3); i >= 0; i--) {
+                edited[random.nextInt(edited.length)] = "-01".charAt(random.nextInt(3));
+            }
+            return edited;
+        } else if (kind == 1) {
+            char[] grown = Arrays.copyOf(input, input.length + 1 + random.nextInt(5));
+            for (int i = input.length; i < grown.length; i++) {
+                grown[i] = "-01".charAt(random.nextInt(3));
+            }
+            return grown;
+        }
+        return Arrays.copyOf(input, Math.max(1, input.length - 1 - random.nextInt(5)));
+    }
+
+    // Writes seeded random programs over symbols that need quoting in the text format, with folded chains and some
+    // explicit step counts, and reads them back from the text and the binary format
+    private static void programFormatsRoundTrip() {
+        Random random = new Random(13);
+        char[] symbols = {'-', '0', '1', ' ', '#', '\'', 'a'};
+        HeadDirection[] directions = HeadDirection.values();
+        int instructionCount = 0;
+        try {
+            for (int run = 0; run < 500; run++) {
+                State[] states = randomStates(random);
+                ArrayList<Instruction> list = new ArrayList<>();
+                for (State state : states) {
+                    for (char symbol : symbols) {
+                        if (random.nextInt(4) == 0) {
+                            continue;
+                        }
+                        list.add(new Instruction(state, symbol, states[random.nextInt(states.length)],
+                                symbols[random.nextInt(symbols.length)], directions[random.nextInt(directions.length)],
+                                random.nextInt(10) == 0, random.nextInt(5) == 0 ? 2 + random.nextInt(100) : 1));
+                    }
+                }
+                Instruction[] instructions = ProgramOptimizer.foldStationaryChains(list.toArray(new Instruction[0]));
+                instructionCount += instructions.length;
+
+                StringWriter text = new StringWriter();
+                ProgramFormat.write(instructions, text);
+                Instruction[] parsed = ProgramFormat.parse(new StringReader(text.toString()));
+                if (parsed.length != instructions.length) {
+                    throw new AssertionError("Read " + parsed.length + " of " + instructions.length
+                            + " instructions back from\n" + text);
+                }
+                for (int i = 0; i < parsed.length; i++) {
+                    if (!describe(parsed[i]).equals(describe(instructions[i]))) {
+                        throw new AssertionError("Read " + describe(parsed[i]) + " back instead of "
+                                + describe(instructions[i]));
+                    }
+                }
+
+                CompiledProgram compiled = CompiledProgram.compile(instructions);
+                ByteArrayOutputStream binary = new ByteArrayOutputStream();
+                ProgramFormat.write(compiled, binary);
+                CompiledProgram read = ProgramFormat.read(ByteBuffer.wrap(binary.toByteArray()));
+                if (!read.equals(compiled)) {
+                    throw new AssertionError("Binary format changed the program written from\n" + text);
+                }
+                for (int state = 0; state < compiled.getStateCount(); state++) {
+                    if (!read.getState(state).getName().equals(compiled.getState(state).getName())) {
+                        throw new AssertionError("Binary format renamed " + compiled.getState(state).getName()
+                                + " to " + read.getState(state).getName());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new AssertionError("Program formats failed", e);
+        }
+        System.out.println("Program formats round trip: " + instructionCount + " instructions");
+    }
+
+    private static String describe(Instruction instruction) {
+        return instruction.getOldState().getName() + " '" + instruction.getGivenSymbol() + "' "
+                + instruction.getNewState().getName() + " '" + instruction.getWriteSymbol() + "' "
+                + instruction.getDirection() + " " + instruction.isHalt() + " " + instruction.getSteps();
+    }
+
+    private static State[] randomStates(Random random) {
+        State[] states = new State[1 + random.nextInt(4)];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = new State("s" + i);
+        }
+        return states;
+    }
+
+    // Gives most state and symbol pairs a transition over the symbols -, 0 and 1, leaving a few missing and letting
+    // the odd one halt; small programs like these often loop on one state, so sweeps and repeated blocks are common
+    private static Instruction[] randomProgram(Random random, State[] states) {
+        char[] symbols = {'-', '0', '1'};
+        HeadDirection[] directions = HeadDirection.values();
+        ArrayList<Instruction> instructions = new ArrayList<>();
+        for (State state : states) {
+            for (char symbol : symbols) {
+                if (random.nextInt(12) == 0) {
+                    continue;
+                }
+                instructions.add(new Instruction(state, symbol, states[random.nextInt(states.length)],
+                        symbols[random.nextInt(symbols.length)], directions[random.nextInt(directions.length)],
+                        random.nextInt(40) == 0));
+            }
+        }
+        return instructions.toArray(new Instruction[0]);
+    }
+
+    private static char[] randomInput(Random random) {
+        char[] input = new char[1 + random.nextInt(20)];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = "-01".charAt(random.nextInt(3));
+        }
+        return input;
     }
 }